@@ -0,0 +1,66 @@
+package com.bc.maven.plugins;
+
+import java.io.File;
+
+/**
+ * A help set for which a search database is created.
+ */
+public class HelpSet {
+
+    /**
+     * The directory containing the Java Help set.
+     *
+     * @parameter
+     * @required
+     */
+    private File sourcePath;
+
+    /**
+     * The locale of the help set, e.g. "de_DE".
+     *
+     * @parameter
+     */
+    private String locale;
+
+    /**
+     * The location of the output JavaSearchIndex database.
+     *
+     * @parameter
+     * @required
+     */
+    private File dataBase;
+
+    /**
+     * The file to which the indexed pages and messages about pages which could not be indexed are written,
+     * see the <code>logFile</code> parameter of the javahelp-indexer goal. Defaults to no log.
+     *
+     * @parameter
+     */
+    private File logFile;
+
+    public HelpSet() {
+    }
+
+    public HelpSet(File sourcePath, String locale, File dataBase, File logFile) {
+        this.sourcePath = sourcePath;
+        this.locale = locale;
+        this.dataBase = dataBase;
+        this.logFile = logFile;
+    }
+
+    public File getSourcePath() {
+        return sourcePath;
+    }
+
+    public String getLocale() {
+        return locale;
+    }
+
+    public File getDataBase() {
+        return dataBase;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+}
@@ -0,0 +1,183 @@
+package com.bc.maven.plugins;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Records content hashes of the files from which a search database has been created, and of the
+ * indexer options, so that a database whose inputs have not changed need not be created again.
+ */
+public class IndexState {
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File file;
+    private final Properties hashes;
+
+    /**
+     * Creates an empty state.
+     *
+     * @param file the state file
+     */
+    public IndexState(File file) {
+        this(file, new Properties());
+    }
+
+    private IndexState(File file, Properties hashes) {
+        this.file = file;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Loads the state from the given file. A missing or unreadable file results in an empty state.
+     *
+     * @param file the state file
+     * @return the state
+     */
+    public static IndexState load(File file) {
+        Properties hashes = new Properties();
+        if (file.exists()) {
+            InputStream stream = null;
+            try {
+                stream = new FileInputStream(file);
+                hashes.load(stream);
+            } catch (IOException e) {
+                hashes.clear();
+            } finally {
+                close(stream);
+            }
+        }
+        return new IndexState(file, hashes);
+    }
+
+    /**
+     * Records the hash of an input.
+     *
+     * @param name the name of the input, e.g. the path of an indexed file relative to the source path
+     * @param hash the hash of the input
+     */
+    public void put(String name, String hash) {
+        hashes.setProperty(name, hash);
+    }
+
+    /**
+     * @param previousState the state of the previous build
+     * @return the names of the inputs which have been added, changed or removed since the previous build
+     */
+    public Set<String> getChanges(IndexState previousState) {
+        Set<String> changes = new TreeSet<String>();
+        for (String name : hashes.stringPropertyNames()) {
+            if (!hashes.getProperty(name).equals(previousState.hashes.getProperty(name))) {
+                changes.add(name);
+            }
+        }
+        for (String name : previousState.hashes.stringPropertyNames()) {
+            if (!hashes.containsKey(name)) {
+                changes.add(name);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Deletes the state file, so that the inputs are considered changed in the next build.
+     */
+    public void delete() {
+        file.delete();
+    }
+
+    /**
+     * Saves the recorded hashes.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void save() throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            hashes.store(stream, "maven-javahelp-plugin state, do not edit");
+        } finally {
+            close(stream);
+        }
+    }
+
+    /**
+     * Computes the hash of the content of the given file.
+     *
+     * @param file the file
+     * @return the hash as hex string
+     * @throws IOException if an I/O error occurs
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        InputStream stream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            close(stream);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the hash of the given strings.
+     *
+     * @param parts the strings, may contain null
+     * @return the hash as hex string
+     */
+    public static String hash(String... parts) {
+        MessageDigest digest = createDigest();
+        try {
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes("UTF-8"));
+                digest.update((byte) 0);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.bc.maven.plugins;
+
+import com.sun.java.help.impl.HeaderParser;
+import com.sun.java.help.search.ChangedCharSetException;
+import com.sun.java.help.search.DefaultIndexBuilder;
+import com.sun.java.help.search.DefaultIndexerKit;
+import com.sun.java.help.search.Indexer;
+import com.sun.java.help.search.QueryEngine;
+
+import javax.help.search.ConfigFile;
+import javax.help.search.IndexBuilder;
+import javax.help.search.IndexerKit;
+import javax.help.search.SearchItem;
+import javax.help.search.SearchQuery;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Parses help pages and builds search databases the way the JavaHelp <code>Indexer</code> does, but in two
+ * separate steps. Parsing a page records the calls the indexer kit makes to its index builder. Building a
+ * database replays the recorded calls of each page into a new index builder, so that the database equals
+ * the one the indexer creates from the same pages. Search databases can be searched the way the JavaHelp
+ * viewer does.
+ * <p/>
+ * This class is loaded by the class loader of an {@link IsolatedIndexer} and must only depend on the Java
+ * runtime and the JavaHelp library. Only one instance may be created per class loader, because the HTML
+ * indexer kit binds its static parser callback to the first kit instance. Instances are not thread-safe.
+ */
+public class IndexerBridge {
+
+    private static final String DEFAULT_CHARSET = "ISO8859_1";
+
+    private static final int OPEN_DOCUMENT = 1;
+    private static final int STORE_LOCATION = 2;
+    private static final int STORE_TITLE = 3;
+    private static final int CLOSE_DOCUMENT = 4;
+
+    private final Map<String, IndexerKit> kits = new HashMap<String, IndexerKit>();
+    private final Map<String, ConfigFile> configs = new HashMap<String, ConfigFile>();
+    private final Map<String, QueryEngine> engines = new HashMap<String, QueryEngine>();
+
+    /**
+     * Parses a page and records the calls made to the index builder.
+     *
+     * @param sourcePath the source path, ending with a separator
+     * @param file       the page, relative to the source path
+     * @param locale     the locale used to split text into words
+     * @param configFile the indexer configuration file, may be null
+     * @return the recorded calls
+     * @throws Exception if the page cannot be read
+     */
+    public byte[] parse(String sourcePath, String file, String locale, String configFile) throws Exception {
+        Recorder recorder = new Recorder(sourcePath);
+        parse(sourcePath, file, locale, getConfig(configFile), recorder);
+        return recorder.toByteArray();
+    }
+
+    /**
+     * Creates a search database. Pages with recorded calls are not parsed again.
+     *
+     * @param dataBase    the location of the database, ending with a separator
+     * @param sourcePath  the source path, ending with a separator
+     * @param files       the pages, relative to the source path
+     * @param recordings  for each page the file containing its recorded calls, or null if it has to be parsed
+     * @param locale      the locale used to split text into words
+     * @param configFile  the indexer configuration file, may be null
+     * @param noStopWords true, if stop words are indexed too
+     * @return messages about pages which could not be indexed
+     * @throws Exception if the database cannot be created
+     */
+    public String[] build(String dataBase, String sourcePath, String[] files, String[] recordings, String locale,
+                          String configFile, boolean noStopWords) throws Exception {
+        Map<String, String> recordingsByFile = new HashMap<String, String>();
+        for (int i = 0; i < files.length; i++) {
+            recordingsByFile.put(files[i], recordings[i]);
+        }
+        List<String> messages = new ArrayList<String>();
+        ConfigFile config = new ConfigFile(configFile, new Vector<String>(Arrays.asList(files)), noStopWords);
+        DefaultIndexBuilder builder = new DefaultIndexBuilder(dataBase);
+        builder.storeStopWords(config.getStopWords());
+        for (Object element : config.getFiles()) {
+            String file = (String) element;
+            String recording = recordingsByFile.get(file);
+            try {
+                if (recording != null) {
+                    replay(recording, builder);
+                } else {
+                    parse(sourcePath, file, locale, config, builder);
+                }
+            } catch (IOException e) {
+                messages.add("File '" + sourcePath + file + "' not indexed: " + e.getMessage());
+            }
+        }
+        builder.close();
+        return messages.toArray(new String[messages.size()]);
+    }
+
+    /**
+     * Searches a search database. The database is opened by the first search.
+     *
+     * @param dataBase the location of the database, ending with a separator
+     * @param query    the query, as entered in the JavaHelp viewer
+     * @param locale   the locale used to split the query into words
+     * @return the number of pages found
+     * @throws Exception if the database cannot be read
+     */
+    public int search(String dataBase, String query, String locale) throws Exception {
+        QueryEngine engine = engines.get(dataBase);
+        if (engine == null) {
+            // the help set base is only used for the URLs of the pages found
+            engine = new QueryEngine(dataBase, new File(dataBase).getParentFile().toURI().toURL());
+            engines.put(dataBase, engine);
+        }
+        HitCounter counter = new HitCounter();
+        engine.processQuery(query, getLocale(locale), counter);
+        return counter.pages.size();
+    }
+
+    private static Locale getLocale(String locale) {
+        String[] parts = locale.split("_", 3);
+        return new Locale(parts[0], parts.length > 1 ? parts[1] : "", parts.length > 2 ? parts[2] : "");
+    }
+
+    /**
+     * Parses a page like <code>Indexer.compile</code> does, including its handling of the character set.
+     */
+    private void parse(String sourcePath, String file, String locale, ConfigFile config, IndexBuilder builder)
+            throws IOException {
+        URL url = new URL("file", "", sourcePath + file);
+        String contentType = url.openConnection().getContentType();
+        if (contentType == null) {
+            throw new FileNotFoundException(sourcePath + file);
+        }
+        String charset = DEFAULT_CHARSET;
+        int i = contentType.indexOf(';');
+        if (i > -1) {
+            charset = getCharset(contentType.substring(i), charset);
+            contentType = contentType.substring(0, i).trim();
+        }
+        IndexerKit kit = getKit(contentType);
+        kit.setLocale(locale);
+
+        boolean ignoreCharset = false;
+        while (true) {
+            InputStream stream = url.openStream();
+            try {
+                kit.parse(new InputStreamReader(stream, charset), file, ignoreCharset, builder, config);
+                return;
+            } catch (ChangedCharSetException e) {
+                charset = e.keyEqualsCharSet() ? e.getCharSetSpec() : getCharset(e.getCharSetSpec(), charset);
+                ignoreCharset = true;
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    private static String getCharset(String parameters, String charset) {
+        int i = parameters.indexOf(';');
+        if (i > -1 && i < parameters.length() - 1) {
+            parameters = parameters.substring(i + 1);
+        }
+        if (parameters.length() > 0) {
+            String value = new HeaderParser(parameters).findValue("charset");
+            if (value != null) {
+                return value;
+            }
+        }
+        return charset;
+    }
+
+    private IndexerKit getKit(String contentType) {
+        IndexerKit kit = kits.get(contentType);
+        if (kit == null) {
+            kit = Indexer.createIndexerKitForContentType(contentType);
+            if (kit == null) {
+                kit = new DefaultIndexerKit();
+            }
+            kits.put(contentType, kit);
+        }
+        return kit;
+    }
+
+    private ConfigFile getConfig(String configFile) {
+        ConfigFile config = configs.get(configFile);
+        if (config == null) {
+            // only used to map file names to URLs, which does not depend on files and stop words
+            config = new ConfigFile(configFile, new Vector<String>(), true);
+            configs.put(configFile, config);
+        }
+        return config;
+    }
+
+    private static void replay(String recording, IndexBuilder builder) throws Exception {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(recording)));
+        try {
+            List<String> tokens = new ArrayList<String>();
+            int call;
+            while ((call = in.read()) != -1) {
+                switch (call) {
+                    case OPEN_DOCUMENT:
+                        builder.openDocument(readString(in));
+                        break;
+                    case STORE_LOCATION:
+                        int index = readInt(in);
+                        if (index == tokens.size()) {
+                            tokens.add(readString(in));
+                        }
+                        builder.storeLocation(tokens.get(index), readInt(in));
+                        break;
+                    case STORE_TITLE:
+                        builder.storeTitle(in.readBoolean() ? readString(in) : null);
+                        break;
+                    case CLOSE_DOCUMENT:
+                        builder.closeDocument();
+                        break;
+                    default:
+                        throw new IOException("Invalid recording " + recording);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        char[] chars = new char[readInt(in)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reads a non-negative int written in 7-bit groups.
+     */
+    private static int readInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * An index builder which records the calls made to it. Each distinct token is written once,
+     * later occurrences refer to it by number.
+     */
+    private static class Recorder extends IndexBuilder {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> tokens = new HashMap<String, Integer>();
+
+        Recorder(String existingDir) throws Exception {
+            // the index builder creates its directory, which is never written
+            super(existingDir);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public void openDocument(String name) throws IOException {
+            out.write(OPEN_DOCUMENT);
+            writeString(name);
+        }
+
+        @Override
+        public void storeLocation(String text, int position) throws IOException {
+            out.write(STORE_LOCATION);
+            Integer index = tokens.get(text);
+            if (index == null) {
+                writeInt(tokens.size());
+                writeString(text);
+                tokens.put(text, tokens.size());
+            } else {
+                writeInt(index);
+            }
+            writeInt(position);
+        }
+
+        @Override
+        public void storeTitle(String title) throws IOException {
+            out.write(STORE_TITLE);
+            out.writeBoolean(title != null);
+            if (title != null) {
+                writeString(title);
+            }
+        }
+
+        @Override
+        public void closeDocument() throws IOException {
+            out.write(CLOSE_DOCUMENT);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void storeStopWords(Enumeration stopWords) {
+        }
+
+        @Override
+        public Enumeration getStopWords() {
+            return null;
+        }
+
+        private void writeString(String s) throws IOException {
+            writeInt(s.length());
+            out.writeChars(s);
+        }
+
+        private void writeInt(int value) throws IOException {
+            if (value < 0) {
+                throw new IOException("Negative value " + value);
+            }
+            while (value >= 0x80) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    /**
+     * A query which counts the pages found by the query engine. A page may be found several times, once for
+     * each of its passages matching the query.
+     */
+    private static class HitCounter extends SearchQuery {
+
+        final Set<String> pages = new HashSet<String>();
+
+        HitCounter() {
+            super(null);
+        }
+
+        @Override
+        public boolean isActive() {
+            return true;
+        }
+
+        @Override
+        public void itemsFound(boolean inSearch, Vector items) {
+            for (Object item : items) {
+                pages.add(((SearchItem) item).getFilename());
+            }
+        }
+    }
+}
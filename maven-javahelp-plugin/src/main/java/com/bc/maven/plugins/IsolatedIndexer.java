@@ -0,0 +1,180 @@
+package com.bc.maven.plugins;
+
+import com.sun.java.help.search.Indexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the JavaHelp indexer in a class loader of its own. The indexer keeps the state of its HTML
+ * parser in static fields, so indexers loaded by the same class loader must not run concurrently,
+ * neither within one execution nor across modules of a parallel build.
+ * <p/>
+ * Pages can either be indexed at once by {@link #compile}, or be parsed by {@link #parse} and then be
+ * indexed by {@link #build}, see {@link IndexerBridge}. An instance must only be used for one of both.
+ * Search databases can be searched by {@link #search}, whose word variants are kept in static fields too.
+ * Instances are not thread-safe.
+ */
+public class IsolatedIndexer {
+
+    private final URLClassLoader classLoader;
+    private Object bridge;
+
+    public IsolatedIndexer() {
+        // no parent, the JavaHelp library and the bridge only depend on the Java runtime
+        classLoader = new URLClassLoader(new URL[]{getLocation(Indexer.class), getLocation(IsolatedIndexer.class)},
+                                         null);
+    }
+
+    /**
+     * @return a hash of the JavaHelp library, so that pages parsed by one version are not replayed into
+     *         the database of another
+     * @throws IOException if the library cannot be read
+     */
+    public static String getLibraryHash() throws IOException {
+        URL location = getLocation(Indexer.class);
+        File file;
+        try {
+            file = new File(location.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid location of the JavaHelp library: " + location, e);
+        } catch (IllegalArgumentException e) {
+            // not a local file
+            return IndexState.hash(location.toString());
+        }
+        return file.isFile() ? IndexState.hash(file) : IndexState.hash(file.getAbsolutePath());
+    }
+
+    private static URL getLocation(Class<?> type) {
+        CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new IllegalStateException("Cannot locate the classes of " + type.getName());
+        }
+        return codeSource.getLocation();
+    }
+
+    /**
+     * Runs the indexer on a whole help set, as the javahelp-indexer goal did before pages were parsed
+     * separately. Only used by tests, which compare the databases of both ways.
+     *
+     * @param args the command line arguments of the indexer
+     * @throws Exception if the indexer fails
+     */
+    public void compile(String[] args) throws Exception {
+        Class<?> indexerClass = classLoader.loadClass(Indexer.class.getName());
+        invoke(indexerClass.getDeclaredConstructor().newInstance(), "compile", new Class<?>[]{String[].class}, (Object) args);
+    }
+
+    /**
+     * Parses a page and records the calls made to the index builder.
+     *
+     * @param sourcePath the directory containing the help set
+     * @param file       the page, relative to the source path
+     * @param locale     the locale of the help set, may be null
+     * @param configFile the indexer configuration file, may be null
+     * @return the recorded calls
+     * @throws Exception if the page cannot be parsed
+     */
+    public byte[] parse(File sourcePath, String file, String locale, File configFile) throws Exception {
+        return (byte[]) invoke(getBridge(), "parse",
+                               new Class<?>[]{String.class, String.class, String.class, String.class},
+                               getDirectory(sourcePath), file, getLocale(locale), getPath(configFile));
+    }
+
+    /**
+     * Creates a search database from recorded pages.
+     *
+     * @param dataBase    the location of the database
+     * @param sourcePath  the directory containing the help set
+     * @param files       the pages, relative to the source path
+     * @param recordings  for each page the file containing the result of {@link #parse}, or null if the page has
+     *                    to be parsed
+     * @param locale      the locale of the help set, may be null
+     * @param configFile  the indexer configuration file, may be null
+     * @param noStopWords true, if stop words are indexed too
+     * @return messages about pages which could not be indexed
+     * @throws Exception if the database cannot be created
+     */
+    public String[] build(File dataBase, File sourcePath, List<String> files, List<File> recordings, String locale,
+                          File configFile, boolean noStopWords) throws Exception {
+        String[] recordingPaths = new String[recordings.size()];
+        for (int i = 0; i < recordingPaths.length; i++) {
+            recordingPaths[i] = getPath(recordings.get(i));
+        }
+        return (String[]) invoke(getBridge(), "build",
+                                 new Class<?>[]{String.class, String.class, String[].class, String[].class,
+                                         String.class, String.class, boolean.class},
+                                 getDirectory(dataBase), getDirectory(sourcePath),
+                                 files.toArray(new String[files.size()]), recordingPaths, getLocale(locale),
+                                 getPath(configFile), noStopWords);
+    }
+
+    /**
+     * Searches a search database like the JavaHelp viewer does.
+     *
+     * @param dataBase the location of the database
+     * @param query    the query
+     * @param locale   the locale of the help set, may be null
+     * @return the number of pages found
+     * @throws Exception if the database cannot be read
+     */
+    public int search(File dataBase, String query, String locale) throws Exception {
+        return (Integer) invoke(getBridge(), "search", new Class<?>[]{String.class, String.class, String.class},
+                                getDirectory(dataBase), query, getLocale(locale));
+    }
+
+    private Object getBridge() throws Exception {
+        if (bridge == null) {
+            bridge = classLoader.loadClass(IndexerBridge.class.getName()).getDeclaredConstructor().newInstance();
+        }
+        return bridge;
+    }
+
+    private static Object invoke(Object target, String name, Class<?>[] parameterTypes, Object... args)
+            throws Exception {
+        Method method = target.getClass().getMethod(name, parameterTypes);
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static String getDirectory(File dir) {
+        return dir.getAbsolutePath() + File.separator;
+    }
+
+    /**
+     * @return the given locale, or the default locale as the indexer uses it
+     */
+    private static String getLocale(String locale) {
+        return locale != null ? locale : Locale.getDefault().toString();
+    }
+
+    private static String getPath(File file) {
+        return file != null ? file.getAbsolutePath() : null;
+    }
+
+    /**
+     * Releases the class loader of this indexer.
+     */
+    public void close() {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -23,21 +23,45 @@
  */
 package com.bc.maven.plugins;
 
-import com.sun.java.help.search.Indexer;
-
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.util.DirectoryScanner;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Goal which invokes the Javahelp indexer. This will create a search index database for your javahelp
  * set. Note that currently this goal can only be invoked on a directory but all html files under that directory
  * will be indexed recursively.
+ * <p/>
+ * Several help sets, e.g. one per locale, can be given by <code>helpSets</code>. Their databases are
+ * created concurrently, each by its own {@link IsolatedIndexer}.
+ * <p/>
+ * Pages are parsed concurrently before the databases are created, and the parsed pages are cached in
+ * <code>cacheDirectory</code>. Pages which have been parsed in a previous build are not parsed again.
  *
  * @author Chad Lyon
  * @author Marco Zuehlke
@@ -46,12 +70,23 @@ import java.util.List;
  */
 public class JavaHelpMojo extends AbstractMojo {
 
-    private static Indexer indexer = new Indexer();
-
     private static final String DEFAULT_INCLUDE = "**/*.html";
 
     private static final String DEFAULT_EXCLUDE = "**/.svn";
 
+    private static final String OPTIONS_KEY = ":options";
+
+    /**
+     * Version of the format of cached pages, part of their keys.
+     */
+    private static final String PAGE_FORMAT = "1";
+
+    /**
+     * The files written by the indexer into the search database directory.
+     */
+    static final List<String> DATABASE_FILES = Collections.unmodifiableList(
+            Arrays.asList("DOCS", "DOCS.TAB", "OFFSETS", "POSITIONS", "SCHEMA", "TMAP"));
+
     /**
      * List of files to include. Specified as fileset patterns.
      *
@@ -86,16 +121,39 @@ public class JavaHelpMojo extends AbstractMojo {
     private File sourcePath;
 
     /**
+     * The file to which the name and URL of each indexed page are written, in the format of the indexer's
+     * <code>-logfile</code> output but without parse times, followed by messages about pages which could not
+     * be indexed. Defaults to no log.
+     *
      * @parameter
      */
     private File logFile;
 
+    /**
+     * The help sets to index. If given, <code>sourcePath</code>, <code>locale</code>, <code>dataBase</code>
+     * and <code>logFile</code> are ignored. All other parameters apply to each help set.
+     *
+     * @parameter
+     */
+    private HelpSet[] helpSets;
+
+    /**
+     * Number of help sets indexed and of pages parsed concurrently. Defaults to the number of available
+     * processors.
+     *
+     * @parameter expression="${javahelp.indexer.threads}"
+     */
+    private Integer threads;
+
     /**
      * @parameter
      */
     private File configFile;
 
     /**
+     * Logs the name and URL of each indexed page, like the indexer's <code>-verbose</code> option, in the
+     * format of <code>logFile</code>.
+     *
      * @parameter
      */
     private boolean verbose;
@@ -110,63 +168,236 @@ public class JavaHelpMojo extends AbstractMojo {
      */
     private boolean skip;
 
+    /**
+     * Directory in which parsed pages are cached, keyed by a hash of their content and of the JavaHelp
+     * library. Pages found in the cache are not parsed again when a search database is created.
+     *
+     * @parameter expression="${javahelp.indexer.cacheDirectory}" default-value="${project.build.directory}/javahelp-cache"
+     */
+    private File cacheDirectory;
+
+    /**
+     * Creates the search database even if the indexed files and options have not changed since the
+     * previous build. Content hashes of the indexed files are recorded in a state file next to the
+     * search database.
+     *
+     * @parameter expression="${javahelp.indexer.force}" default-value="false"
+     */
+    private boolean force;
+
+    /**
+     * Hash of the JavaHelp library, part of the keys of cached pages.
+     */
+    private String libraryHash;
+
     public void execute()
             throws MojoExecutionException {
-        /*
-         * Get the arguments...
-         */
-        ArrayList<String> args = new ArrayList<String>();
+        if (skip) {
+            getLog().info("Skipping Javahelp search indexing.");
+            return;
+        }
 
-        if (!skip) {
-            if (locale != null) {
-                args.add("-locale");
-                args.add(locale);
-            }
+        HelpSet[] helpSets = this.helpSets;
+        if (helpSets == null || helpSets.length == 0) {
+            helpSets = new HelpSet[]{new HelpSet(sourcePath, locale, dataBase, logFile)};
+        }
+        int threadCount = threads != null ? threads : Runtime.getRuntime().availableProcessors();
+        if (threadCount < 1) {
+            throw new MojoExecutionException("<threads> must be at least 1");
+        }
 
-            if (dataBase != null) {
-                args.add("-db");
-                args.add(dataBase.getAbsolutePath());
+        List<IndexTask> tasks = new ArrayList<IndexTask>(helpSets.length);
+        for (HelpSet helpSet : helpSets) {
+            if (helpSet.getSourcePath() == null || helpSet.getDataBase() == null) {
+                throw new MojoExecutionException("<sourcePath> and <dataBase> must be given for each help set");
             }
-
-            if (logFile != null) {
-                args.add("-logfile");
-                args.add(logFile.getAbsolutePath());
+            tasks.add(new IndexTask(helpSet, getFilesToIndex(helpSet.getSourcePath())));
+        }
+        PageCache pageCache = null;
+        if (cacheDirectory != null) {
+            pageCache = new PageCache(cacheDirectory);
+            try {
+                libraryHash = IsolatedIndexer.getLibraryHash();
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to read the JavaHelp library: " + e.getMessage(), e);
             }
+        }
 
-            if (configFile != null) {
-                args.add("-c");
-                args.add(configFile.getAbsolutePath());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Callable<Void>> checks = new ArrayList<Callable<Void>>();
+            for (final IndexTask task : tasks) {
+                checks.add(new Callable<Void>() {
+                    public Void call() throws MojoExecutionException {
+                        task.check();
+                        return null;
+                    }
+                });
             }
+            runAll(executor, checks);
 
-            if (verbose) {
-                args.add("-verbose");
+            if (pageCache != null) {
+                parsePages(executor, threadCount, tasks, pageCache);
             }
 
-            if (noStopWords) {
-                args.add("-nostopwords");
+            List<Callable<Void>> builds = new ArrayList<Callable<Void>>();
+            for (final IndexTask task : tasks) {
+                if (task.isIndexingRequired()) {
+                    builds.add(new Callable<Void>() {
+                        public Void call() throws MojoExecutionException {
+                            task.build();
+                            return null;
+                        }
+                    });
+                }
             }
+            runAll(executor, builds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while indexing", e);
+        } finally {
+            executor.shutdownNow();
+        }
 
-            if (sourcePath != null) {
-                args.add("-sourcepath");
-                args.add(sourcePath.getAbsolutePath() + File.separator);
+        for (IndexTask task : tasks) {
+            log(task);
+        }
+    }
 
-                List<String> files = getFilesToIndex(sourcePath);
-                args.addAll(files);
+    /**
+     * Parses the pages of all help sets to be indexed which are not cached yet. Each thread parses with its own
+     * {@link IsolatedIndexer}, pages with equal keys are parsed once.
+     */
+    private void parsePages(ExecutorService executor, int threadCount, List<IndexTask> tasks,
+                            final PageCache pageCache) throws MojoExecutionException, InterruptedException {
+        Map<String, Page> pages = new LinkedHashMap<String, Page>();
+        for (IndexTask task : tasks) {
+            if (task.isIndexingRequired()) {
+                for (String file : task.files) {
+                    String key = task.getPageKey(file);
+                    if (!pages.containsKey(key) && !pageCache.contains(key)) {
+                        pages.put(key, new Page(task, file));
+                    } else {
+                        task.cachedPageCount++;
+                    }
+                }
             }
+        }
+
+        final Queue<Map.Entry<String, Page>> queue = new ConcurrentLinkedQueue<Map.Entry<String, Page>>(pages.entrySet());
+        final AtomicInteger cacheErrorCount = new AtomicInteger();
+        final AtomicReference<IOException> cacheError = new AtomicReference<IOException>();
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < Math.min(threadCount, pages.size()); i++) {
+            workers.add(new Callable<Void>() {
+                public Void call() {
+                    IsolatedIndexer indexer = new IsolatedIndexer();
+                    try {
+                        Map.Entry<String, Page> entry;
+                        while ((entry = queue.poll()) != null) {
+                            Page page = entry.getValue();
+                            HelpSet helpSet = page.task.helpSet;
+                            byte[] recording;
+                            try {
+                                recording = indexer.parse(helpSet.getSourcePath(), page.file, helpSet.getLocale(),
+                                                          configFile);
+                            } catch (Exception e) {
+                                // the page is parsed again while indexing, which reports the failure
+                                getLog().debug("Failed to parse " + new File(helpSet.getSourcePath(), page.file)
+                                               + ": " + e);
+                                continue;
+                            }
+                            try {
+                                pageCache.put(entry.getKey(), recording);
+                            } catch (IOException e) {
+                                cacheErrorCount.incrementAndGet();
+                                cacheError.compareAndSet(null, e);
+                            }
+                        }
+                    } finally {
+                        indexer.close();
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(executor, workers);
+        if (cacheError.get() != null) {
+            getLog().warn("Failed to write " + cacheErrorCount.get() + " parsed page(s) to " + cacheDirectory
+                          + ", they are parsed again while indexing: " + cacheError.get().getMessage());
+        }
+    }
 
+    /**
+     * Runs the given calls and waits for all of them. The first failure is thrown after all calls have finished.
+     */
+    private static void runAll(ExecutorService executor, List<Callable<Void>> calls)
+            throws MojoExecutionException, InterruptedException {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(calls.size());
+        for (Callable<Void> call : calls) {
+            futures.add(executor.submit(call));
+        }
+        MojoExecutionException failure = null;
+        for (Future<Void> future : futures) {
             try {
-                indexer.compile(args.toArray(new String[args.size()]));
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof MojoExecutionException
+                              ? (MojoExecutionException) cause
+                              : new MojoExecutionException(cause.getMessage(), cause);
+                }
             }
-            catch (Exception e) {
-                throw new MojoExecutionException(
-                        "Java Help indexing exception, a full search database may not have been created.",
-                        e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void log(IndexTask task) {
+        File dataBase = task.helpSet.getDataBase();
+        if (!task.isIndexingRequired()) {
+            getLog().info("Javahelp Search Database " + dataBase.getAbsolutePath() + " is up to date.");
+            return;
+        }
+        String details = (task.files.size() - task.cachedPageCount) + " of " + task.files.size() + " page(s) parsed";
+        if (task.changes != null) {
+            getLog().debug("Changed: " + task.changes);
+            details = task.changes.size() + " indexed file(s) or option(s) changed, " + details;
+        }
+        getLog().info("Javahelp Search Database written to " + dataBase.getAbsolutePath() + " (" + details + ")");
+        if (verbose) {
+            for (String line : task.getPageLines()) {
+                getLog().info(line);
             }
+        }
+        for (String message : task.messages) {
+            getLog().warn(message);
+        }
+        if (task.logError != null) {
+            getLog().warn("Failed to write " + task.helpSet.getLogFile() + ": " + task.logError.getMessage());
+        }
+        if (task.stateError != null) {
+            getLog().warn("Failed to write " + getStateFile(dataBase) + ": " + task.stateError.getMessage());
+        }
+    }
 
-            getLog().info("Javahelp Search Database written to " + dataBase.getAbsolutePath());
-        } else {
-            getLog().info("Skipping Javahelp search indexing.");
+    /**
+     * @return the state file next to the given search database
+     */
+    private static File getStateFile(File dataBase) {
+        File dir = dataBase.getAbsoluteFile();
+        return new File(dir.getParentFile(), dir.getName() + ".state");
+    }
+
+    static boolean isDataBaseComplete(File dataBase) {
+        for (String name : DATABASE_FILES) {
+            if (!new File(dataBase, name).isFile()) {
+                return false;
+            }
         }
+        return true;
     }
 
     private List<String> getFilesToIndex(File basedir) {
@@ -188,11 +419,156 @@ public class JavaHelpMojo extends AbstractMojo {
         scanner.setBasedir(basedir);
         scanner.scan();
 
-        for (String file : scanner.getIncludedFiles()) {
+        // sorted, so that the database does not depend on the order of directory listings
+        String[] includedFiles = scanner.getIncludedFiles();
+        Arrays.sort(includedFiles);
+        for (String file : includedFiles) {
             getLog().debug("Indexing: " + file);
             files.add(file);
         }
 
         return files;
     }
+
+    /**
+     * A page of a help set.
+     */
+    private static class Page {
+
+        final IndexTask task;
+        final String file;
+
+        Page(IndexTask task, String file) {
+            this.task = task;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Creates the search database of one help set.
+     */
+    private class IndexTask {
+
+        final HelpSet helpSet;
+        final List<String> files;
+        final Map<String, String> fileHashes = new HashMap<String, String>();
+        IndexState state;
+        String configHash;
+        /**
+         * The changed inputs, or null if the state of the previous build has not been checked.
+         */
+        Set<String> changes;
+        int cachedPageCount;
+        String[] messages = new String[0];
+        IOException logError;
+        IOException stateError;
+
+        IndexTask(HelpSet helpSet, List<String> files) {
+            this.helpSet = helpSet;
+            this.files = files;
+        }
+
+        /**
+         * Hashes the files to index and compares them with the state of the previous build.
+         */
+        void check() throws MojoExecutionException {
+            File dataBase = helpSet.getDataBase();
+            File stateFile = getStateFile(dataBase);
+            state = new IndexState(stateFile);
+            try {
+                configHash = configFile != null ? IndexState.hash(configFile) : null;
+                state.put(OPTIONS_KEY, IndexState.hash(helpSet.getLocale(), configHash, String.valueOf(noStopWords)));
+                for (String file : files) {
+                    String hash = IndexState.hash(new File(helpSet.getSourcePath(), file));
+                    fileHashes.put(file, hash);
+                    state.put(file, hash);
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to read files to index: " + e.getMessage(), e);
+            }
+            if (!force && isDataBaseComplete(dataBase)) {
+                changes = state.getChanges(IndexState.load(stateFile));
+            }
+        }
+
+        boolean isIndexingRequired() {
+            return changes == null || !changes.isEmpty();
+        }
+
+        /**
+         * @return the key of the given page in the page cache
+         */
+        String getPageKey(String file) {
+            String locale = helpSet.getLocale() != null ? helpSet.getLocale() : Locale.getDefault().toString();
+            return IndexState.hash(PAGE_FORMAT, libraryHash, fileHashes.get(file), file, locale, configHash);
+        }
+
+        void build() throws MojoExecutionException {
+            File dataBase = helpSet.getDataBase();
+            List<File> recordings = new ArrayList<File>(files.size());
+            PageCache pageCache = cacheDirectory != null ? new PageCache(cacheDirectory) : null;
+            for (String file : files) {
+                File recording = pageCache != null ? pageCache.getFile(getPageKey(file)) : null;
+                recordings.add(recording != null && recording.isFile() ? recording : null);
+            }
+            // a failed run must not leave the previous state behind
+            state.delete();
+
+            IsolatedIndexer indexer = new IsolatedIndexer();
+            try {
+                messages = indexer.build(dataBase, helpSet.getSourcePath(), files, recordings, helpSet.getLocale(),
+                                         configFile, noStopWords);
+            }
+            catch (Exception e) {
+                throw new MojoExecutionException(
+                        "Java Help indexing exception, a full search database may not have been created in "
+                        + dataBase.getAbsolutePath(),
+                        e);
+            }
+            finally {
+                indexer.close();
+            }
+
+            if (helpSet.getLogFile() != null) {
+                try {
+                    writeLog();
+                } catch (IOException e) {
+                    logError = e;
+                }
+            }
+            try {
+                state.save();
+            } catch (IOException e) {
+                stateError = e;
+            }
+        }
+
+        /**
+         * @return the name and URL of each page, as the indexer logs them
+         */
+        List<String> getPageLines() {
+            List<String> lines = new ArrayList<String>(2 * files.size());
+            for (String file : files) {
+                lines.add("   File: '" + file + "'");
+                lines.add("    URL: '" + new File(helpSet.getSourcePath(), file).getAbsoluteFile().toURI() + "'");
+            }
+            return lines;
+        }
+
+        private void writeLog() throws IOException {
+            File logFile = helpSet.getLogFile();
+            logFile.getAbsoluteFile().getParentFile().mkdirs();
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(logFile), "UTF-8"));
+            try {
+                for (String line : getPageLines()) {
+                    writer.println(line);
+                }
+                for (String message : messages) {
+                    writer.println(message);
+                }
+            } finally {
+                writer.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,201 @@
+package com.bc.maven.plugins;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Goal which verifies the search databases created by the javahelp-indexer goal. Each database is opened
+ * in-process and searched with the given probe queries, like the JavaHelp viewer does. The numbers of pages
+ * found are checked and the latencies of the queries are reported as percentiles.
+ * <p/>
+ * The build fails if a database is missing or empty, if a query finds fewer or more pages than expected or
+ * if the latency percentile exceeds <code>maxLatency</code>.
+ *
+ * @goal javahelp-verify
+ * @phase verify
+ */
+public class JavaHelpVerifyMojo extends AbstractMojo {
+
+    /**
+     * The locale of the help set, e.g. "de_DE", used to split the queries into words. Defaults to the
+     * default locale, as for the javahelp-indexer goal.
+     *
+     * @parameter
+     */
+    private String locale;
+
+    /**
+     * The location of the JavaSearchIndex database.
+     *
+     * @parameter default-value="${project.build.outputDirectory}/doc/help/JavaHelpSearch"
+     */
+    private File dataBase;
+
+    /**
+     * The help sets to verify. If given, <code>locale</code> and <code>dataBase</code> are ignored. Only the
+     * locale and the database of the help sets are used.
+     *
+     * @parameter
+     */
+    private HelpSet[] helpSets;
+
+    /**
+     * The queries run against each database.
+     *
+     * @parameter
+     */
+    private ProbeQuery[] queries;
+
+    /**
+     * Number of timed runs of each query.
+     *
+     * @parameter expression="${javahelp.verify.iterations}" default-value="20"
+     */
+    private int iterations;
+
+    /**
+     * Number of runs of each query before it is timed.
+     *
+     * @parameter expression="${javahelp.verify.warmUpIterations}" default-value="3"
+     */
+    private int warmUpIterations;
+
+    /**
+     * The percentile of the query latencies compared with <code>maxLatency</code>.
+     *
+     * @parameter expression="${javahelp.verify.latencyPercentile}" default-value="90"
+     */
+    private double latencyPercentile;
+
+    /**
+     * The maximum latency of queries in milliseconds. Defaults to no maximum.
+     *
+     * @parameter expression="${javahelp.verify.maxLatency}"
+     */
+    private Integer maxLatency;
+
+    /**
+     * @parameter expression="${javahelp.verify.skip}"
+     */
+    private boolean skip;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping Javahelp search verification.");
+            return;
+        }
+
+        HelpSet[] helpSets = this.helpSets;
+        if (helpSets == null || helpSets.length == 0) {
+            helpSets = new HelpSet[]{new HelpSet(null, locale, dataBase, null)};
+        }
+        ProbeQuery[] queries = this.queries != null ? this.queries : new ProbeQuery[0];
+        for (ProbeQuery query : queries) {
+            if (query.getText() == null) {
+                throw new MojoExecutionException("<text> must be given for each query");
+            }
+        }
+        if (iterations < 1 || warmUpIterations < 0) {
+            throw new MojoExecutionException("<iterations> must be at least 1, <warmUpIterations> at least 0");
+        }
+        if (latencyPercentile <= 0 || latencyPercentile > 100) {
+            throw new MojoExecutionException("<latencyPercentile> must be greater than 0 and at most 100");
+        }
+
+        List<String> failures = new ArrayList<String>();
+        for (HelpSet helpSet : helpSets) {
+            if (helpSet.getDataBase() == null) {
+                throw new MojoExecutionException("<dataBase> must be given for each help set");
+            }
+            verify(helpSet, queries, failures);
+        }
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                getLog().error(failure);
+            }
+            throw new MojoFailureException("Javahelp search verification failed: " + failures.get(0));
+        }
+    }
+
+    private void verify(HelpSet helpSet, ProbeQuery[] queries, List<String> failures)
+            throws MojoExecutionException {
+        File dataBase = helpSet.getDataBase();
+        if (!JavaHelpMojo.isDataBaseComplete(dataBase)) {
+            failures.add("Javahelp Search Database " + dataBase.getAbsolutePath() + " is missing or incomplete");
+            return;
+        }
+        // only the database decides whether it is empty, queries may expect to find nothing
+        if (new File(dataBase, "DOCS").length() == 0) {
+            failures.add("Javahelp Search Database " + dataBase.getAbsolutePath() + " is empty");
+            return;
+        }
+        if (queries.length == 0) {
+            getLog().info("Javahelp Search Database " + dataBase.getAbsolutePath() + " exists, no queries given.");
+            return;
+        }
+
+        long[] latencies = new long[queries.length * iterations];
+        IsolatedIndexer indexer = new IsolatedIndexer();
+        try {
+            for (int i = 0; i < queries.length; i++) {
+                ProbeQuery query = queries[i];
+                int hits = 0;
+                for (int j = 0; j < warmUpIterations; j++) {
+                    hits = indexer.search(dataBase, query.getText(), helpSet.getLocale());
+                }
+                for (int j = 0; j < iterations; j++) {
+                    long start = System.nanoTime();
+                    hits = indexer.search(dataBase, query.getText(), helpSet.getLocale());
+                    latencies[i * iterations + j] = System.nanoTime() - start;
+                }
+                long[] queryLatencies = Arrays.copyOfRange(latencies, i * iterations, (i + 1) * iterations);
+                Arrays.sort(queryLatencies);
+                getLog().debug("'" + query.getText() + "': " + hits + " page(s) found, median latency "
+                               + format(percentile(queryLatencies, 50)));
+                if (query.getMinHits() != null && hits < query.getMinHits()) {
+                    failures.add("'" + query.getText() + "' found " + hits + " page(s) in " + dataBase
+                                 + ", expected at least " + query.getMinHits());
+                }
+                if (query.getMaxHits() != null && hits > query.getMaxHits()) {
+                    failures.add("'" + query.getText() + "' found " + hits + " page(s) in " + dataBase
+                                 + ", expected at most " + query.getMaxHits());
+                }
+            }
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to search " + dataBase.getAbsolutePath() + ": " + e.getMessage(),
+                                             e);
+        } finally {
+            indexer.close();
+        }
+
+        Arrays.sort(latencies);
+        getLog().info("Javahelp Search Database " + dataBase.getAbsolutePath() + " searched by " + queries.length
+                      + " query(ies) " + iterations + " time(s) each, latency p50 " + format(percentile(latencies, 50))
+                      + ", p90 " + format(percentile(latencies, 90)) + ", p99 " + format(percentile(latencies, 99))
+                      + ", max " + format(latencies[latencies.length - 1]));
+        long latency = percentile(latencies, latencyPercentile);
+        if (maxLatency != null && latency > maxLatency * 1000000L) {
+            failures.add("Latency percentile " + latencyPercentile + " of " + dataBase.getAbsolutePath() + " is "
+                         + format(latency) + ", expected at most " + maxLatency + " ms");
+        }
+    }
+
+    /**
+     * @return the nearest-rank percentile of the given sorted values
+     */
+    static long percentile(long[] sortedValues, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sortedValues.length);
+        return sortedValues[Math.max(rank, 1) - 1];
+    }
+
+    private static String format(long nanos) {
+        return String.format(Locale.ENGLISH, "%.2f ms", nanos / 1.0e6);
+    }
+}
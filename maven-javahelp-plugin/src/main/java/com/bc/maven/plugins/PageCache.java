@@ -0,0 +1,56 @@
+package com.bc.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Caches parsed help pages, see {@link IsolatedIndexer#parse}. Entries are keyed by a hash of everything
+ * the result of parsing depends on, so they never become stale and may be shared by help sets and builds.
+ * Entries are written atomically, so that concurrent writers of the same entry do not conflict.
+ */
+public class PageCache {
+
+    private final File dir;
+
+    public PageCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @param key the key of the entry
+     * @return the file of the entry, which exists if the entry has been cached
+     */
+    public File getFile(String key) {
+        return new File(new File(dir, key.substring(0, 2)), key);
+    }
+
+    /**
+     * @param key the key of the entry
+     * @return true, if the entry has been cached
+     */
+    public boolean contains(String key) {
+        return getFile(key).isFile();
+    }
+
+    /**
+     * Caches an entry.
+     *
+     * @param key     the key of the entry
+     * @param content the content of the entry
+     * @throws IOException if an I/O error occurs
+     */
+    public void put(String key, byte[] content) throws IOException {
+        Path file = getFile(key).toPath();
+        Files.createDirectories(file.getParent());
+        Path tempFile = Files.createTempFile(file.getParent(), "." + key, ".tmp");
+        try {
+            Files.write(tempFile, content);
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
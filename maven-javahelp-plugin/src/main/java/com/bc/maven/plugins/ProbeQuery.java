@@ -0,0 +1,51 @@
+package com.bc.maven.plugins;
+
+/**
+ * A query run against a search database, with the number of pages it is expected to find. Like the
+ * JavaHelp viewer, at most the 100 best matching passages are considered.
+ */
+public class ProbeQuery {
+
+    /**
+     * The query, as entered in the JavaHelp viewer.
+     *
+     * @parameter
+     * @required
+     */
+    private String text;
+
+    /**
+     * The minimum number of pages found. Defaults to no minimum.
+     *
+     * @parameter
+     */
+    private Integer minHits;
+
+    /**
+     * The maximum number of pages found. Defaults to no maximum.
+     *
+     * @parameter
+     */
+    private Integer maxHits;
+
+    public ProbeQuery() {
+    }
+
+    public ProbeQuery(String text, Integer minHits, Integer maxHits) {
+        this.text = text;
+        this.minHits = minHits;
+        this.maxHits = maxHits;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Integer getMinHits() {
+        return minHits;
+    }
+
+    public Integer getMaxHits() {
+        return maxHits;
+    }
+}
@@ -0,0 +1,266 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.bc.maven.plugins.TestUtils.delete;
+import static com.bc.maven.plugins.TestUtils.set;
+
+public class JavaHelpMojoTest extends TestCase {
+
+    private static final int HELP_SET_COUNT = 6;
+    private static final int PAGE_COUNT = 40;
+
+    private File baseDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("javahelp-mojo-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(baseDir);
+    }
+
+    /**
+     * Indexes several help sets concurrently and compares each database with one created on its own.
+     */
+    public void testHelpSetsAreIndexedConcurrently() throws Exception {
+        HelpSet[] helpSets = new HelpSet[HELP_SET_COUNT];
+        for (int i = 0; i < HELP_SET_COUNT; i++) {
+            File sourcePath = new File(baseDir, "help" + i);
+            writePages(sourcePath, "set" + i);
+            helpSets[i] = new HelpSet(sourcePath, null, new File(baseDir, "db" + i + "/JavaHelpSearch"), null);
+        }
+
+        JavaHelpMojo mojo = new JavaHelpMojo();
+        set(mojo, "helpSets", helpSets);
+        set(mojo, "threads", HELP_SET_COUNT);
+        mojo.execute();
+
+        for (int i = 0; i < HELP_SET_COUNT; i++) {
+            assertDataBaseEquals(helpSets[i].getSourcePath(), helpSets[i].getDataBase());
+            assertTrue(new File(baseDir, "db" + i + "/JavaHelpSearch.state").isFile());
+        }
+    }
+
+    /**
+     * Indexes a help set with an empty and then with a filled page cache.
+     */
+    public void testCachedPagesAreNotParsedAgain() throws Exception {
+        File sourcePath = new File(baseDir, "help");
+        writePages(sourcePath, "set");
+        File dataBase = new File(baseDir, "db/JavaHelpSearch");
+        File cacheDirectory = new File(baseDir, "cache");
+
+        JavaHelpMojo mojo = new JavaHelpMojo();
+        set(mojo, "sourcePath", sourcePath);
+        set(mojo, "dataBase", dataBase);
+        set(mojo, "cacheDirectory", cacheDirectory);
+        set(mojo, "force", true);
+        mojo.execute();
+        assertDataBaseEquals(sourcePath, dataBase);
+        assertEquals(PAGE_COUNT, countFiles(cacheDirectory));
+
+        // identical pages share their cache entries
+        writePages(new File(baseDir, "copy"), "set");
+        set(mojo, "sourcePath", new File(baseDir, "copy"));
+        mojo.execute();
+        assertDataBaseEquals(sourcePath, dataBase);
+        assertEquals(PAGE_COUNT, countFiles(cacheDirectory));
+
+        writePage(new File(sourcePath, "page0.html"), "changed");
+        set(mojo, "sourcePath", sourcePath);
+        mojo.execute();
+        assertDataBaseEquals(sourcePath, dataBase);
+        assertEquals(PAGE_COUNT + 1, countFiles(cacheDirectory));
+    }
+
+    /**
+     * Indexes pages which switch their character set by a meta element, with an empty and a filled page cache.
+     */
+    public void testCharsetOfPagesIsDetected() throws Exception {
+        File sourcePath = new File(baseDir, "help");
+        sourcePath.mkdirs();
+        writeCharsetPage(new File(sourcePath, "latin1.html"), "ISO-8859-1", "Gr\u00f6\u00dfe");
+        writeCharsetPage(new File(sourcePath, "utf8.html"), "UTF-8", "\u00dcbersicht");
+        File dataBase = new File(baseDir, "db/JavaHelpSearch");
+
+        JavaHelpMojo mojo = new JavaHelpMojo();
+        set(mojo, "sourcePath", sourcePath);
+        set(mojo, "dataBase", dataBase);
+        set(mojo, "cacheDirectory", new File(baseDir, "cache"));
+        set(mojo, "force", true);
+        mojo.execute();
+        assertDataBaseEquals(sourcePath, dataBase);
+        mojo.execute();
+        assertDataBaseEquals(sourcePath, dataBase);
+
+        IsolatedIndexer indexer = new IsolatedIndexer();
+        try {
+            assertEquals(1, indexer.search(dataBase, "gr\u00f6\u00dfe", "de_DE"));
+            assertEquals(1, indexer.search(dataBase, "\u00fcbersicht", "de_DE"));
+        } finally {
+            indexer.close();
+        }
+    }
+
+    public void testPageCacheWriteFailureIsReported() throws Exception {
+        File sourcePath = new File(baseDir, "help");
+        writePages(sourcePath, "set");
+        File dataBase = new File(baseDir, "db/JavaHelpSearch");
+        // a file where the cache directory should be
+        File cacheDirectory = new File(baseDir, "cache");
+        assertTrue(cacheDirectory.createNewFile());
+
+        JavaHelpMojo mojo = new JavaHelpMojo();
+        set(mojo, "sourcePath", sourcePath);
+        set(mojo, "dataBase", dataBase);
+        set(mojo, "cacheDirectory", cacheDirectory);
+        final List<String> warnings = new ArrayList<String>();
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void warn(CharSequence content) {
+                warnings.add(content.toString());
+            }
+        });
+        mojo.execute();
+        assertDataBaseEquals(sourcePath, dataBase);
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("Failed to write " + PAGE_COUNT + " parsed page(s) to "
+                                                               + cacheDirectory));
+    }
+
+    public void testIndexedPagesAreLogged() throws Exception {
+        File sourcePath = new File(baseDir, "help");
+        writePages(sourcePath, "set");
+        File logFile = new File(baseDir, "logs/indexer.log");
+
+        JavaHelpMojo mojo = new JavaHelpMojo();
+        set(mojo, "sourcePath", sourcePath);
+        set(mojo, "dataBase", new File(baseDir, "db/JavaHelpSearch"));
+        set(mojo, "logFile", logFile);
+        set(mojo, "verbose", true);
+        final List<String> infos = new ArrayList<String>();
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                infos.add(content.toString());
+            }
+        });
+        mojo.execute();
+
+        List<String> lines = Files.readAllLines(logFile.toPath(), Charset.forName("UTF-8"));
+        assertEquals(2 * PAGE_COUNT, lines.size());
+        assertEquals("   File: 'page0.html'", lines.get(0));
+        assertEquals("    URL: '" + new File(sourcePath, "page0.html").toURI() + "'", lines.get(1));
+        // the database is logged first, then the pages
+        assertEquals(lines, infos.subList(1, infos.size()));
+    }
+
+    public void testUnchangedHelpSetIsNotIndexedAgain() throws Exception {
+        File sourcePath = new File(baseDir, "help");
+        writePages(sourcePath, "set");
+        File dataBase = new File(baseDir, "db/JavaHelpSearch");
+
+        JavaHelpMojo mojo = new JavaHelpMojo();
+        set(mojo, "sourcePath", sourcePath);
+        set(mojo, "dataBase", dataBase);
+        mojo.execute();
+        File docs = new File(dataBase, "DOCS");
+        assertTrue(docs.setLastModified(0));
+
+        mojo.execute();
+        assertEquals(0, docs.lastModified());
+
+        writePage(new File(sourcePath, "page0.html"), "changed");
+        mojo.execute();
+        assertTrue(docs.lastModified() != 0);
+    }
+
+    /**
+     * Compares the given database with one created by the JavaHelp indexer.
+     */
+    private void assertDataBaseEquals(File sourcePath, File dataBase) throws Exception {
+        File expectedDataBase = new File(baseDir, "expected/JavaHelpSearch");
+        delete(expectedDataBase);
+        IsolatedIndexer indexer = new IsolatedIndexer();
+        try {
+            indexer.compile(createArgs(sourcePath, expectedDataBase));
+        } finally {
+            indexer.close();
+        }
+        for (String name : JavaHelpMojo.DATABASE_FILES) {
+            byte[] expected = Files.readAllBytes(new File(expectedDataBase, name).toPath());
+            byte[] actual = Files.readAllBytes(new File(dataBase, name).toPath());
+            assertTrue(dataBase + ": " + name, Arrays.equals(expected, actual));
+        }
+    }
+
+    private static int countFiles(File file) {
+        File[] files = file.listFiles();
+        if (files == null) {
+            return 1;
+        }
+        int count = 0;
+        for (File child : files) {
+            count += countFiles(child);
+        }
+        return count;
+    }
+
+    private static String[] createArgs(File sourcePath, File dataBase) {
+        List<String> args = new ArrayList<String>();
+        args.add("-db");
+        args.add(dataBase.getAbsolutePath());
+        args.add("-sourcepath");
+        args.add(sourcePath.getAbsolutePath() + File.separator);
+        String[] pages = sourcePath.list();
+        Arrays.sort(pages);
+        args.addAll(Arrays.asList(pages));
+        return args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * Writes pages whose words depend on the given prefix, so that each help set has a different database.
+     */
+    private static void writePages(File dir, String prefix) throws IOException {
+        dir.mkdirs();
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            writePage(new File(dir, "page" + i + ".html"), prefix + "word" + i);
+        }
+    }
+
+    private static void writePage(File file, String word) throws IOException {
+        StringBuilder body = new StringBuilder("<h1>" + word + "</h1>\n");
+        for (int i = 0; i < 20; i++) {
+            body.append("<p>The ").append(word).append(" topic explains ").append(word).append(i)
+                    .append(" in detail.</p>\n");
+        }
+        TestUtils.writePage(file, "Page " + word, body.toString());
+    }
+
+    private static void writeCharsetPage(File file, String charset, String word) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), charset);
+        try {
+            writer.write("<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=" + charset
+                         + "\"><title>" + word + "</title></head><body>\n");
+            writer.write("<p>" + word + " und Inhalt</p>\n");
+            writer.write("</body></html>\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static com.bc.maven.plugins.TestUtils.delete;
+import static com.bc.maven.plugins.TestUtils.set;
+
+public class JavaHelpVerifyMojoTest extends TestCase {
+
+    private File baseDir;
+    private File dataBase;
+
+    @Override
+    protected void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("javahelp-verify-test").toFile();
+        File sourcePath = new File(baseDir, "help");
+        sourcePath.mkdirs();
+        writePage(new File(sourcePath, "page0.html"), "Getting started", "Open a product and browse its bands.");
+        writePage(new File(sourcePath, "page1.html"), "Bands", "Each band of a product has a name.");
+        writePage(new File(sourcePath, "page2.html"), "Masks", "Masks are defined by expressions.");
+        dataBase = new File(baseDir, "db/JavaHelpSearch");
+
+        IsolatedIndexer indexer = new IsolatedIndexer();
+        try {
+            indexer.compile(new String[]{"-db", dataBase.getAbsolutePath(),
+                    "-sourcepath", sourcePath.getAbsolutePath() + File.separator,
+                    "page0.html", "page1.html", "page2.html"});
+        } finally {
+            indexer.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(baseDir);
+    }
+
+    public void testExpectedPagesAreFound() throws Exception {
+        JavaHelpVerifyMojo mojo = createMojo(new ProbeQuery("product", 2, 2),
+                                             new ProbeQuery("masks", 1, 1),
+                                             new ProbeQuery("xyzzy", null, 0));
+        mojo.execute();
+    }
+
+    public void testUnexpectedHitCountFails() throws Exception {
+        JavaHelpVerifyMojo mojo = createMojo(new ProbeQuery("product", 3, null));
+        try {
+            mojo.execute();
+            fail();
+        } catch (MojoFailureException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("expected at least 3"));
+        }
+    }
+
+    public void testMissingDataBaseFails() throws Exception {
+        JavaHelpVerifyMojo mojo = createMojo(new ProbeQuery("product", null, null));
+        set(mojo, "dataBase", new File(baseDir, "missing/JavaHelpSearch"));
+        try {
+            mojo.execute();
+            fail();
+        } catch (MojoFailureException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("missing"));
+        }
+    }
+
+    public void testEmptyDataBaseFails() throws Exception {
+        // the indexer cannot create a database without pages, so the pages are removed from one
+        RandomAccessFile docs = new RandomAccessFile(new File(dataBase, "DOCS"), "rw");
+        try {
+            docs.setLength(0);
+        } finally {
+            docs.close();
+        }
+        for (ProbeQuery[] queries : new ProbeQuery[][]{{}, {new ProbeQuery("xyzzy", null, 0)}}) {
+            JavaHelpVerifyMojo mojo = createMojo(queries);
+            try {
+                mojo.execute();
+                fail();
+            } catch (MojoFailureException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("is empty"));
+            }
+        }
+    }
+
+    public void testOnlyUnexpectedPagesCanBeProbed() throws Exception {
+        createMojo(new ProbeQuery("xyzzy", null, 0), new ProbeQuery("plugh", null, 0)).execute();
+    }
+
+    public void testExceededLatencyFails() throws Exception {
+        JavaHelpVerifyMojo mojo = createMojo(new ProbeQuery("product", null, null));
+        set(mojo, "maxLatency", 0);
+        try {
+            mojo.execute();
+            fail();
+        } catch (MojoFailureException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Latency percentile"));
+        }
+    }
+
+    public void testPercentile() {
+        long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(5, JavaHelpVerifyMojo.percentile(values, 50));
+        assertEquals(9, JavaHelpVerifyMojo.percentile(values, 90));
+        assertEquals(10, JavaHelpVerifyMojo.percentile(values, 99));
+        assertEquals(1, JavaHelpVerifyMojo.percentile(values, 1));
+    }
+
+    private JavaHelpVerifyMojo createMojo(ProbeQuery... queries) throws Exception {
+        JavaHelpVerifyMojo mojo = new JavaHelpVerifyMojo();
+        set(mojo, "dataBase", dataBase);
+        set(mojo, "queries", queries);
+        set(mojo, "iterations", 5);
+        set(mojo, "warmUpIterations", 1);
+        set(mojo, "latencyPercentile", 90.0);
+        return mojo;
+    }
+
+    private static void writePage(File file, String title, String text) throws IOException {
+        TestUtils.writePage(file, title, "<h1>" + title + "</h1>\n<p>" + text + "</p>\n");
+    }
+}
@@ -0,0 +1,55 @@
+package com.bc.maven.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+
+/**
+ * Helpers for tests which run mojos on help sets in a temporary directory.
+ */
+final class TestUtils {
+
+    private TestUtils() {
+    }
+
+    /**
+     * Sets a field of the given object, as Maven does for mojo parameters.
+     */
+    static void set(Object object, String name, Object value) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    /**
+     * Writes a UTF-8 encoded help page.
+     *
+     * @param body the HTML of the body
+     */
+    static void writePage(File file, String title, String body) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("<html><head><title>" + title + "</title></head><body>\n");
+            writer.write(body);
+            writer.write("</body></html>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Deletes the given file or directory, including its content.
+     */
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,52 @@
+package com.bc.maven.plugins.benchmarks;
+
+import com.bc.maven.plugins.TemplateReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures {@link TemplateReader#readAll()} for templates whose keys resolve to long values,
+ * which have to be buffered by the reader.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LongValueBenchmark {
+
+    /**
+     * Length of the resolved value in characters.
+     */
+    @Param({"16", "8192", "65536", "1048576"})
+    public int valueLength;
+
+    private String text;
+    private TemplateReader.Resolver resolver;
+
+    @Setup
+    public void setUp() {
+        char[] value = new char[valueLength];
+        Arrays.fill(value, 'v');
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("key", new String(value));
+        resolver = new MapResolver(map);
+        text = TemplateTexts.create(4096, 1024, true);
+    }
+
+    @Benchmark
+    public String readAll() throws IOException {
+        return new TemplateReader(new StringReader(text), resolver).readAll();
+    }
+}
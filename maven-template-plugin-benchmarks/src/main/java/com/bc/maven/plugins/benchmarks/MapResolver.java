@@ -0,0 +1,22 @@
+package com.bc.maven.plugins.benchmarks;
+
+import com.bc.maven.plugins.TemplateReader;
+
+import java.util.Map;
+
+/**
+ * A resolver backed by an unsynchronized map.
+ */
+class MapResolver implements TemplateReader.Resolver {
+
+    private final Map<String, ?> map;
+
+    MapResolver(Map<String, ?> map) {
+        this.map = map;
+    }
+
+    @Override
+    public Object resolve(String reference) {
+        return map.get(reference);
+    }
+}
@@ -0,0 +1,139 @@
+package com.bc.maven.plugins.benchmarks;
+
+import com.bc.maven.plugins.Template;
+import com.bc.maven.plugins.TemplateMojo;
+import org.apache.maven.model.FileSet;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+
+/**
+ * Measures an execution of {@link TemplateMojo} rendering M templates against N filters into a temporary
+ * directory. All outputs are forced to be rendered, identical outputs are not written again.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TemplateMojoBenchmark {
+
+    /**
+     * Number of filter files (N).
+     */
+    @Param({"10", "100"})
+    public int filters;
+
+    /**
+     * Number of templates (M).
+     */
+    @Param({"1", "10"})
+    public int templates;
+
+    /**
+     * Size of each template in characters.
+     */
+    @Param({"16384"})
+    public int templateSize;
+
+    /**
+     * Number of rendering threads.
+     */
+    @Param({"1", "4"})
+    public int threads;
+
+    private File baseDir;
+    private TemplateMojo mojo;
+
+    @Setup
+    public void setUp() throws Exception {
+        baseDir = File.createTempFile("template-mojo-benchmark", "");
+        baseDir.delete();
+        File templateDir = new File(baseDir, "templates");
+        File filterDir = new File(baseDir, "filters");
+        File outputDir = new File(baseDir, "output");
+        templateDir.mkdirs();
+        filterDir.mkdirs();
+
+        FileSet filterSet = new FileSet();
+        filterSet.setDirectory(filterDir.getPath());
+        filterSet.addInclude("*.properties");
+        for (int i = 0; i < filters; i++) {
+            write(new File(filterDir, "filter" + i + ".properties"), "key=value" + i + "\nid=filter" + i + "\n");
+        }
+
+        Template[] templateArray = new Template[templates];
+        for (int i = 0; i < templates; i++) {
+            File source = new File(templateDir, "template" + i + ".txt");
+            write(source, TemplateTexts.create(templateSize, 64, i % 2 == 0));
+            Template template = new Template();
+            set(template, "source", source);
+            set(template, "outputFileNamePattern", "@{filterBaseName}-@{source}");
+            set(template, "filterSet", filterSet);
+            set(template, "lineEnding", "keep");
+            templateArray[i] = template;
+        }
+
+        mojo = new TemplateMojo();
+        mojo.setLog(new NullLog());
+        set(mojo, "project", new MavenProject(new Model()));
+        set(mojo, "outputDirectory", outputDir);
+        set(mojo, "templates", templateArray);
+        set(mojo, "threads", threads);
+        set(mojo, "force", true);
+        set(mojo, "encoding", "UTF-8");
+        set(mojo, "bufferSize", 65536);
+        set(mojo, "decodeThreshold", 4194304L);
+        set(mojo, "streamThreshold", 67108864L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(baseDir);
+    }
+
+    @Benchmark
+    public void execute() throws MojoExecutionException {
+        mojo.execute();
+    }
+
+    private static void set(Object object, String name, Object value) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
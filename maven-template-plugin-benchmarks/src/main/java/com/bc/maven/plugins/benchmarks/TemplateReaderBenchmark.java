@@ -0,0 +1,60 @@
+package com.bc.maven.plugins.benchmarks;
+
+import com.bc.maven.plugins.TemplateReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures {@link TemplateReader#readAll()} across input sizes, key densities and key syntaxes.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TemplateReaderBenchmark {
+
+    /**
+     * Size of the template text in characters.
+     */
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    /**
+     * Number of literal characters between two key references, 0 for no keys at all.
+     */
+    @Param({"0", "16", "256"})
+    public int keyInterval;
+
+    /**
+     * True for <code>${key}</code> references, false for <code>$key</code> references.
+     */
+    @Param({"false", "true"})
+    public boolean bracedKeys;
+
+    private String text;
+    private TemplateReader.Resolver resolver;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("key", "value");
+        resolver = new MapResolver(map);
+        text = TemplateTexts.create(size, keyInterval, bracedKeys);
+    }
+
+    @Benchmark
+    public String readAll() throws IOException {
+        return new TemplateReader(new StringReader(text), resolver).readAll();
+    }
+}
@@ -0,0 +1,83 @@
+package com.bc.maven.plugins.benchmarks;
+
+import com.bc.maven.plugins.TemplateReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the synchronized {@link TemplateReader} with the one created by
+ * {@link TemplateReader#createUnsynchronized}, read character by character and through a {@link CharBuffer}.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TemplateReaderLockingBenchmark {
+
+    @Param({"65536"})
+    public int size;
+
+    private String text;
+    private TemplateReader.Resolver resolver;
+    private CharBuffer charBuffer;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("key", "value");
+        resolver = new MapResolver(map);
+        text = TemplateTexts.create(size, 64, false);
+        charBuffer = CharBuffer.allocate(512);
+    }
+
+    @Benchmark
+    public int readCharsSynchronized() throws IOException {
+        return readChars(new TemplateReader(new StringReader(text), resolver));
+    }
+
+    @Benchmark
+    public int readCharsUnsynchronized() throws IOException {
+        return readChars(TemplateReader.createUnsynchronized(new StringReader(text), resolver));
+    }
+
+    @Benchmark
+    public int readCharBufferSynchronized() throws IOException {
+        return readCharBuffer(new TemplateReader(new StringReader(text), resolver));
+    }
+
+    @Benchmark
+    public int readCharBufferUnsynchronized() throws IOException {
+        return readCharBuffer(TemplateReader.createUnsynchronized(new StringReader(text), resolver));
+    }
+
+    private static int readChars(TemplateReader reader) throws IOException {
+        int sum = 0;
+        int c;
+        while ((c = reader.read()) != -1) {
+            sum += c;
+        }
+        return sum;
+    }
+
+    private int readCharBuffer(TemplateReader reader) throws IOException {
+        int count = 0;
+        int n;
+        while ((n = reader.read(charBuffer)) != -1) {
+            count += n;
+            charBuffer.clear();
+        }
+        return count;
+    }
+}
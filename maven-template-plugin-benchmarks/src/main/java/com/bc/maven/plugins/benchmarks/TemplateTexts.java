@@ -0,0 +1,33 @@
+package com.bc.maven.plugins.benchmarks;
+
+/**
+ * Creates synthetic template texts.
+ */
+class TemplateTexts {
+
+    private TemplateTexts() {
+    }
+
+    /**
+     * Creates a template text which references the key "key" in regular intervals.
+     *
+     * @param size           the approximate size of the text in characters
+     * @param keyInterval    the number of literal characters between two key references, 0 for no keys
+     * @param bracedKeys     true for <code>${key}</code> references, false for <code>$key</code> references
+     * @return the template text
+     */
+    static String create(int size, int keyInterval, boolean bracedKeys) {
+        StringBuilder sb = new StringBuilder(size + 16);
+        int column = 0;
+        while (sb.length() < size) {
+            if (keyInterval > 0 && column == keyInterval) {
+                sb.append(bracedKeys ? "${key}" : "$key ");
+                column = 0;
+            } else {
+                sb.append(sb.length() % 80 == 79 ? '\n' : (char) ('a' + sb.length() % 26));
+                column++;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,405 @@
+package com.bc.maven.plugins;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A template which has been tokenized once into literal segments and key references, so that it
+ * can be rendered against any number of resolvers without scanning the template text again.
+ * Rendering produces exactly the same output as a {@link TemplateReader} reading the template text.
+ * <p/>
+ * A resolved <code>${<i>key</i>}</code> passes the following character through unscanned. If that character
+ * is the key indicator, the remaining text is tokenized differently depending on whether the key
+ * resolves, therefore such references are compiled into a branch with two continuations.
+ * <p/>
+ * The text of a <code>${<i>...</i>}</code> reference is compiled into an {@link Expression}.
+ */
+public class CompiledTemplate {
+
+    private static final int END = -1;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Segment[] segments;
+
+    private CompiledTemplate(Segment[] segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Compiles the template text provided by the given reader using the default key indicator '$'.
+     *
+     * @param in the reader providing the template text
+     * @return the compiled template
+     * @throws IOException if an I/O error occurs
+     */
+    public static CompiledTemplate compile(Reader in) throws IOException {
+        return compile(in, '$');
+    }
+
+    /**
+     * Compiles the template text provided by the given reader.
+     *
+     * @param in           the reader providing the template text
+     * @param keyIndicator the key indicator
+     * @return the compiled template
+     * @throws IOException if an I/O error occurs
+     */
+    public static CompiledTemplate compile(Reader in, char keyIndicator) throws IOException {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        char[] cbuf = new char[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(cbuf)) != -1) {
+            sb.append(cbuf, 0, n);
+        }
+        return compile(sb.toString(), keyIndicator);
+    }
+
+    /**
+     * Compiles the given template text.
+     *
+     * @param text         the template text
+     * @param keyIndicator the key indicator
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(String text, char keyIndicator) {
+        return new Compiler(text, keyIndicator).compile();
+    }
+
+    /**
+     * Renders this template.
+     *
+     * @param map the map to serve as resolver
+     * @return the rendered text
+     */
+    public String render(Map map) {
+        return render(new TemplateReader.KeyValueResolver(map));
+    }
+
+    /**
+     * Renders this template.
+     *
+     * @param resolver the resolver
+     * @return the rendered text
+     */
+    public String render(TemplateReader.Resolver resolver) {
+        StringWriter writer = new StringWriter(16 * 1024);
+        try {
+            render(resolver, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Renders this template.
+     *
+     * @param resolver the resolver
+     * @param writer   the writer receiving the rendered text
+     * @throws IOException if an I/O error occurs
+     */
+    public void render(TemplateReader.Resolver resolver, Writer writer) throws IOException {
+        render(resolver, writer, null);
+    }
+
+    /**
+     * Renders this template and reports the key references which cannot be resolved.
+     *
+     * @param resolver              the resolver
+     * @param writer                the writer receiving the rendered text
+     * @param unresolvedKeyListener the listener notified about unresolved keys, may be null
+     * @throws IOException if an I/O error occurs
+     */
+    public void render(TemplateReader.Resolver resolver, Writer writer,
+                       TemplateReader.UnresolvedKeyListener unresolvedKeyListener) throws IOException {
+        int i = 0;
+        while (i != END) {
+            i = segments[i].render(resolver, writer, unresolvedKeyListener);
+        }
+    }
+
+    /**
+     * @return the keys referenced by this template
+     */
+    public Set<String> getKeys() {
+        Set<String> keys = new TreeSet<String>();
+        for (Segment segment : segments) {
+            if (segment instanceof KeyReference) {
+                keys.add(((KeyReference) segment).expression.getKey());
+            } else if (segment instanceof Branch) {
+                keys.add(((Branch) segment).expression.getKey());
+            }
+        }
+        return keys;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static abstract class Segment {
+
+        int next;
+
+        /**
+         * @return the index of the next segment to render, or {@link #END}
+         */
+        abstract int render(TemplateReader.Resolver resolver, Writer writer,
+                            TemplateReader.UnresolvedKeyListener unresolvedKeyListener) throws IOException;
+    }
+
+    private static class Literal extends Segment {
+
+        private final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        int render(TemplateReader.Resolver resolver, Writer writer,
+                   TemplateReader.UnresolvedKeyListener unresolvedKeyListener) throws IOException {
+            writer.write(text);
+            return next;
+        }
+    }
+
+    private static class KeyReference extends Segment {
+
+        private final String key;
+        private final Expression expression;
+        private final String raw;
+        private final int line;
+        private final int column;
+
+        KeyReference(String key, Expression expression, String raw, int line, int column) {
+            this.key = key;
+            this.expression = expression;
+            this.raw = raw;
+            this.line = line;
+            this.column = column;
+        }
+
+        @Override
+        int render(TemplateReader.Resolver resolver, Writer writer,
+                   TemplateReader.UnresolvedKeyListener unresolvedKeyListener) throws IOException {
+            Object value = expression.evaluate(resolver);
+            if (value != null) {
+                writer.write(value.toString());
+            } else {
+                writer.write(raw);
+                if (unresolvedKeyListener != null) {
+                    unresolvedKeyListener.keyUnresolved(key, line, column);
+                }
+            }
+            return next;
+        }
+    }
+
+    /**
+     * A <code>${<i>key</i>}</code> reference directly followed by the key indicator.
+     */
+    private static class Branch extends Segment {
+
+        private final String key;
+        private final Expression expression;
+        private final String raw;
+        private final char keyIndicator;
+        private final int line;
+        private final int column;
+        private final int resolvedPos;
+        private final int unresolvedPos;
+        int resolvedNext;
+        int unresolvedNext;
+
+        Branch(String key, Expression expression, String raw, int line, int column, char keyIndicator,
+               int resolvedPos, int unresolvedPos) {
+            this.key = key;
+            this.expression = expression;
+            this.raw = raw;
+            this.line = line;
+            this.column = column;
+            this.keyIndicator = keyIndicator;
+            this.resolvedPos = resolvedPos;
+            this.unresolvedPos = unresolvedPos;
+        }
+
+        @Override
+        int render(TemplateReader.Resolver resolver, Writer writer,
+                   TemplateReader.UnresolvedKeyListener unresolvedKeyListener) throws IOException {
+            Object value = expression.evaluate(resolver);
+            if (value != null) {
+                writer.write(value.toString());
+                writer.write(keyIndicator);
+                return resolvedNext;
+            }
+            writer.write(raw);
+            if (unresolvedKeyListener != null) {
+                unresolvedKeyListener.keyUnresolved(key, line, column);
+            }
+            return unresolvedNext;
+        }
+    }
+
+    /**
+     * Tokenizes template text into blocks of segments. Each block starts at a text position
+     * scanned in the normal state and ends either at the end of the text or with a branch.
+     */
+    private static class Compiler {
+
+        private final String text;
+        private final char keyIndicator;
+        private final List<Segment> segments = new ArrayList<Segment>();
+        private final Map<Integer, Integer> blockStarts = new HashMap<Integer, Integer>();
+        private final List<Branch> branches = new ArrayList<Branch>();
+        private final LinkedList<Integer> pendingBlocks = new LinkedList<Integer>();
+        private final StringBuilder literal = new StringBuilder();
+        private int[] lineStarts;
+        private int lineCount;
+
+        Compiler(String text, char keyIndicator) {
+            this.text = text;
+            this.keyIndicator = keyIndicator;
+        }
+
+        CompiledTemplate compile() {
+            pendingBlocks.add(0);
+            while (!pendingBlocks.isEmpty()) {
+                int pos = pendingBlocks.removeFirst();
+                if (!blockStarts.containsKey(pos)) {
+                    blockStarts.put(pos, segments.size());
+                    compileBlock(pos);
+                }
+            }
+            for (Branch branch : branches) {
+                branch.resolvedNext = blockStarts.get(branch.resolvedPos);
+                branch.unresolvedNext = blockStarts.get(branch.unresolvedPos);
+            }
+            return new CompiledTemplate(segments.toArray(new Segment[segments.size()]));
+        }
+
+        private void compileBlock(int pos) {
+            final int first = segments.size();
+            final int n = text.length();
+            while (pos < n) {
+                int i = text.indexOf(keyIndicator, pos);
+                if (i < 0) {
+                    literal.append(text, pos, n);
+                    break;
+                }
+                literal.append(text, pos, i);
+
+                int q = i + 1;
+                if (q == n) {
+                    literal.append(keyIndicator);
+                    break;
+                }
+                int c = text.charAt(q);
+                if (c == '{') {  // ${key}?
+                    int r = text.indexOf('}', q + 1);
+                    if (r < 0) {
+                        literal.append(text, i, n);
+                        break;
+                    }
+                    if (r - i > TemplateReader.MAX_KEY_LENGTH) {
+                        literal.append(text, i, r + 1);
+                        pos = r + 1;
+                        continue;
+                    }
+                    String key = text.substring(q + 1, r);
+                    String raw = text.substring(i, r + 1);
+                    pos = r + 1;
+                    if (pos < n && text.charAt(pos) == keyIndicator) {
+                        int line = getLine(i);
+                        Branch branch = new Branch(key, Expression.parse(key), raw, line, getColumn(line, i),
+                                                   keyIndicator, pos + 1, pos);
+                        add(branch);
+                        branches.add(branch);
+                        pendingBlocks.add(pos + 1);
+                        pendingBlocks.add(pos);
+                        return;
+                    }
+                    int line = getLine(i);
+                    add(new KeyReference(key, Expression.parse(key), raw, line, getColumn(line, i)));
+                } else if (Character.isJavaIdentifierStart(c)) { // $key?
+                    int r = q + 1;
+                    while (r < n && (Character.isJavaIdentifierPart((int) text.charAt(r)) || text.charAt(r) == '.')) {
+                        r++;
+                    }
+                    if (r - i > TemplateReader.MAX_KEY_LENGTH) {
+                        literal.append(text, i, Math.min(r + 1, n)); // overlong, passed through like unresolved
+                        pos = r + 1;
+                        continue;
+                    }
+                    int line = getLine(i);
+                    String key = text.substring(q, r);
+                    add(new KeyReference(key, Expression.key(key), text.substring(i, r), line,
+                                         getColumn(line, i)));
+                    if (r < n) {
+                        literal.append(text.charAt(r)); // the terminating character is not scanned
+                        r++;
+                    }
+                    pos = r;
+                } else {
+                    literal.append(keyIndicator).append((char) c); // c is not scanned
+                    pos = q + 1;
+                }
+            }
+            flushLiteral();
+            if (segments.size() == first) {
+                add(new Literal(""));
+            }
+            segments.get(segments.size() - 1).next = END;
+        }
+
+        /**
+         * @return the line of the given text position, starting at 1. LF, CR/LF and a single CR count
+         *         as one line break each, like in {@link TemplateReader}.
+         */
+        private int getLine(int pos) {
+            if (lineStarts == null) {
+                lineStarts = new int[64];
+                lineStarts[lineCount++] = 0;
+                final int n = text.length();
+                for (int i = 0; i < n; i++) {
+                    char c = text.charAt(i);
+                    if (c == '\n' || c == '\r' && (i + 1 == n || text.charAt(i + 1) != '\n')) {
+                        if (lineCount == lineStarts.length) {
+                            lineStarts = Arrays.copyOf(lineStarts, 2 * lineCount);
+                        }
+                        lineStarts[lineCount++] = i + 1;
+                    }
+                }
+            }
+            int i = Arrays.binarySearch(lineStarts, 0, lineCount, pos);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+
+        private int getColumn(int line, int pos) {
+            return pos - lineStarts[line - 1] + 1;
+        }
+
+        private void add(Segment segment) {
+            flushLiteral();
+            segment.next = segments.size() + 1;
+            segments.add(segment);
+        }
+
+        private void flushLiteral() {
+            if (literal.length() > 0) {
+                Literal segment = new Literal(literal.toString());
+                segment.next = segments.size() + 1;
+                segments.add(segment);
+                literal.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.bc.maven.plugins;
+
+/**
+ * A resolver which counts the lookups of another resolver which return a value and which return none.
+ * Lookups are counted, not substitutions: a key with a default value is counted as unresolved lookup
+ * if the default value is used.
+ * <p/>
+ * Instances are not thread-safe.
+ */
+public class CountingResolver implements TemplateReader.Resolver {
+
+    private final TemplateReader.Resolver resolver;
+    private int resolvedCount;
+    private int unresolvedCount;
+
+    /**
+     * Constructs a counting resolver.
+     *
+     * @param resolver the resolver to which lookups are delegated
+     */
+    public CountingResolver(TemplateReader.Resolver resolver) {
+        if (resolver == null) {
+            throw new NullPointerException("resolver");
+        }
+        this.resolver = resolver;
+    }
+
+    public Object resolve(String key) {
+        Object value = resolver.resolve(key);
+        if (value != null) {
+            resolvedCount++;
+        } else {
+            unresolvedCount++;
+        }
+        return value;
+    }
+
+    /**
+     * @return the number of lookups which returned a value
+     */
+    public int getResolvedCount() {
+        return resolvedCount;
+    }
+
+    /**
+     * @return the number of lookups which returned null
+     */
+    public int getUnresolvedCount() {
+        return unresolvedCount;
+    }
+}
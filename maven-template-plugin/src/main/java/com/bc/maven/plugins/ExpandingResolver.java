@@ -0,0 +1,83 @@
+package com.bc.maven.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A resolver which expands key references contained in the values of another resolver, recursively.
+ * Expanded values are memoized, so that each key is expanded at most once by this resolver.
+ * A key whose value refers back to itself, directly or indirectly, causes a {@link CyclicReferenceException}.
+ * <p/>
+ * Instances are not thread-safe.
+ */
+public class ExpandingResolver implements TemplateReader.Resolver {
+
+    private static final char KEY_INDICATOR = '$';
+    private static final Object UNRESOLVED = new Object();
+
+    private final TemplateReader.Resolver resolver;
+    private final Map<String, Object> expandedValues;
+    private final LinkedHashSet<String> expandingKeys;
+
+    /**
+     * Constructs an expanding resolver.
+     *
+     * @param resolver the resolver providing the values to be expanded
+     */
+    public ExpandingResolver(TemplateReader.Resolver resolver) {
+        if (resolver == null) {
+            throw new NullPointerException("resolver");
+        }
+        this.resolver = resolver;
+        this.expandedValues = new HashMap<String, Object>();
+        this.expandingKeys = new LinkedHashSet<String>();
+    }
+
+    public Object resolve(String key) {
+        Object expandedValue = expandedValues.get(key);
+        if (expandedValue == null) {
+            expandedValue = expand(key);
+            expandedValues.put(key, expandedValue);
+        }
+        return expandedValue != UNRESOLVED ? expandedValue : null;
+    }
+
+    private Object expand(String key) {
+        Object value = resolver.resolve(key);
+        if (value == null) {
+            return UNRESOLVED;
+        }
+        String text = value.toString();
+        if (text.indexOf(KEY_INDICATOR) < 0) {
+            return text;
+        }
+        if (!expandingKeys.add(key)) {
+            List<String> chain = new ArrayList<String>(expandingKeys);
+            chain = chain.subList(chain.indexOf(key), chain.size());
+            StringBuilder sb = new StringBuilder();
+            for (String chainKey : chain) {
+                sb.append(chainKey).append(" -> ");
+            }
+            sb.append(key);
+            throw new CyclicReferenceException("Cyclic property reference: " + sb);
+        }
+        try {
+            return CompiledTemplate.compile(text, KEY_INDICATOR).render(this);
+        } finally {
+            expandingKeys.remove(key);
+        }
+    }
+
+    /**
+     * Thrown if the value of a key refers back to the key itself.
+     */
+    public static class CyclicReferenceException extends IllegalStateException {
+
+        public CyclicReferenceException(String message) {
+            super(message);
+        }
+    }
+}
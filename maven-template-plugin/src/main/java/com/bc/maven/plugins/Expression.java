@@ -0,0 +1,242 @@
+package com.bc.maven.plugins;
+
+import java.util.Locale;
+
+/**
+ * An expression within <code>${<i>...</i>}</code>. An expression is a key, optionally followed by
+ * functions separated by '|' and a default value separated by ":-", for example
+ * <code>${name|trim|upper:-unknown}</code>. The functions are applied to the value of the key in order.
+ * The default value is used if the key cannot be resolved or its value is empty, it extends to the
+ * closing brace. Without a default value, an expression whose key cannot be resolved has no value.
+ * <p/>
+ * Supported functions are <code>upper</code>, <code>lower</code>, <code>trim</code>, <code>capitalize</code>,
+ * <code>baseName</code> (the value up to its last '.') and <code>extension</code> (the value after its last '.').
+ * The key must consist of letters, digits, '_', '.' and '-' and must not start with a digit, '.' or '-'.
+ * Text with an unknown function or another key is taken as a plain key, as is text without '|' and ":-".
+ * <p/>
+ * Expressions are parsed once into a tree of nodes. Each function creates a new string from the value
+ * of its operand, a key or a default value alone evaluates to the resolved value itself.
+ */
+public abstract class Expression {
+
+    private static final char FUNCTION_SEPARATOR = '|';
+    private static final String DEFAULT_SEPARATOR = ":-";
+
+    private Expression() {
+    }
+
+    /**
+     * Parses the given expression text.
+     *
+     * @param text the text between the braces of <code>${<i>...</i>}</code>
+     * @return the expression
+     */
+    public static Expression parse(String text) {
+        if (!isExpression(text)) {
+            return new KeyExpression(text);
+        }
+        String head = text;
+        String defaultValue = null;
+        int i = text.indexOf(DEFAULT_SEPARATOR);
+        if (i >= 0) {
+            head = text.substring(0, i);
+            defaultValue = text.substring(i + DEFAULT_SEPARATOR.length());
+        }
+        String[] parts = head.split("\\" + FUNCTION_SEPARATOR, -1);
+        String key = parts[0].trim();
+        if (!isKey(key)) {
+            return new KeyExpression(text);
+        }
+        Expression expression = new KeyExpression(key);
+        for (int k = 1; k < parts.length; k++) {
+            Function function = Function.forName(parts[k].trim());
+            if (function == null) {
+                return new KeyExpression(text);
+            }
+            expression = new FunctionExpression(expression, function);
+        }
+        if (defaultValue != null) {
+            expression = new DefaultExpression(expression, defaultValue);
+        }
+        return expression;
+    }
+
+    /**
+     * Creates an expression which looks up the given key, without parsing it.
+     *
+     * @param key the key
+     * @return the expression
+     */
+    public static Expression key(String key) {
+        return new KeyExpression(key);
+    }
+
+    /**
+     * @return true, if the given text may be more than a plain key
+     */
+    static boolean isExpression(String text) {
+        return text.indexOf(FUNCTION_SEPARATOR) >= 0 || text.contains(DEFAULT_SEPARATOR);
+    }
+
+    private static boolean isKey(String text) {
+        if (text.length() == 0 || !Character.isJavaIdentifierStart(text.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isJavaIdentifierPart(c) && c != '.' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates this expression.
+     *
+     * @param resolver the resolver used to look up the key
+     * @return the value, or null if the expression has no value
+     */
+    public abstract Object evaluate(TemplateReader.Resolver resolver);
+
+    /**
+     * @return the key looked up by this expression
+     */
+    public abstract String getKey();
+
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static class KeyExpression extends Expression {
+
+        private final String key;
+
+        KeyExpression(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public Object evaluate(TemplateReader.Resolver resolver) {
+            return resolver.resolve(key);
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static class FunctionExpression extends Expression {
+
+        private final Expression operand;
+        private final Function function;
+
+        FunctionExpression(Expression operand, Function function) {
+            this.operand = operand;
+            this.function = function;
+        }
+
+        @Override
+        public Object evaluate(TemplateReader.Resolver resolver) {
+            Object value = operand.evaluate(resolver);
+            return value != null ? function.apply(value.toString()) : null;
+        }
+
+        @Override
+        public String getKey() {
+            return operand.getKey();
+        }
+    }
+
+    private static class DefaultExpression extends Expression {
+
+        private final Expression operand;
+        private final String defaultValue;
+
+        DefaultExpression(Expression operand, String defaultValue) {
+            this.operand = operand;
+            this.defaultValue = defaultValue;
+        }
+
+        @Override
+        public Object evaluate(TemplateReader.Resolver resolver) {
+            Object value = operand.evaluate(resolver);
+            return value != null && !isEmpty(value) ? value : defaultValue;
+        }
+
+        private static boolean isEmpty(Object value) {
+            if (value instanceof CharSequence) {
+                return ((CharSequence) value).length() == 0;
+            }
+            return value.toString().length() == 0;
+        }
+
+        @Override
+        public String getKey() {
+            return operand.getKey();
+        }
+    }
+
+    private static enum Function {
+
+        UPPER("upper") {
+            @Override
+            String apply(String value) {
+                return value.toUpperCase(Locale.ENGLISH);
+            }
+        },
+        LOWER("lower") {
+            @Override
+            String apply(String value) {
+                return value.toLowerCase(Locale.ENGLISH);
+            }
+        },
+        TRIM("trim") {
+            @Override
+            String apply(String value) {
+                return value.trim();
+            }
+        },
+        CAPITALIZE("capitalize") {
+            @Override
+            String apply(String value) {
+                if (value.length() == 0 || Character.isUpperCase(value.charAt(0))) {
+                    return value;
+                }
+                char[] chars = value.toCharArray();
+                chars[0] = Character.toUpperCase(chars[0]);
+                return new String(chars);
+            }
+        },
+        BASE_NAME("baseName") {
+            @Override
+            String apply(String value) {
+                int i = value.lastIndexOf('.');
+                return i > 0 ? value.substring(0, i) : value;
+            }
+        },
+        EXTENSION("extension") {
+            @Override
+            String apply(String value) {
+                int i = value.lastIndexOf('.');
+                return i > 0 ? value.substring(i + 1) : "";
+            }
+        };
+
+        private final String name;
+
+        Function(String name) {
+            this.name = name;
+        }
+
+        abstract String apply(String value);
+
+        static Function forName(String name) {
+            for (Function function : values()) {
+                if (function.name.equals(name)) {
+                    return function;
+                }
+            }
+            return null;
+        }
+    }
+}
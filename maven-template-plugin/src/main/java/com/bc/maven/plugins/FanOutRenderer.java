@@ -0,0 +1,420 @@
+package com.bc.maven.plugins;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Renders a template text against several resolvers in a single pass over the text. The text is read
+ * through a window of fixed size and tokenized once into literal runs and key references, each of which
+ * is written to the writers of all outputs. Rendering produces exactly the same output for each resolver
+ * as a {@link TemplateReader} reading the template text.
+ * <p/>
+ * A resolved <code>${<i>key</i>}</code> passes the following character through unscanned. If that character
+ * is the key indicator, the outputs which resolve the key continue to scan the text one character ahead of
+ * the others, as a separate group. Groups are joined again once they scan the same position.
+ * <p/>
+ * Memory use depends on the number of outputs, not on the size of the text. The writers should be buffered,
+ * they are not flushed or closed by the renderer.
+ */
+public class FanOutRenderer {
+
+    private static final int NORMAL = 0;
+    private static final int RAW_TO_BRACE = 1;
+    private static final int RAW_IDENTIFIER = 2;
+    /**
+     * Number of characters which must be available from a key indicator on to parse a key reference,
+     * including the character following a <code>${<i>key</i>}</code> reference.
+     */
+    private static final int LOOKAHEAD = TemplateReader.MAX_KEY_LENGTH + 2;
+
+    private final char keyIndicator;
+    private final List<Output> outputs = new ArrayList<Output>();
+    private final List<Group> groups = new ArrayList<Group>();
+    private Reader in;
+    private char[] window;
+    private long windowStart;
+    private int windowLength;
+    private boolean eof;
+    private boolean locating;
+    private int line;
+    private long lineStart;
+    private long countedPos;
+    private boolean afterCR;
+
+    /**
+     * Constructs a renderer using the default key indicator '$'.
+     */
+    public FanOutRenderer() {
+        this('$');
+    }
+
+    /**
+     * Constructs a renderer.
+     *
+     * @param keyIndicator the key indicator
+     */
+    public FanOutRenderer(char keyIndicator) {
+        this.keyIndicator = keyIndicator;
+    }
+
+    /**
+     * Adds an output.
+     *
+     * @param resolver              the resolver
+     * @param writer                the writer receiving the rendered text
+     * @param unresolvedKeyListener the listener notified about unresolved keys, may be null
+     * @return the output, see {@link Output#getError()}
+     */
+    public Output addOutput(TemplateReader.Resolver resolver, Writer writer,
+                            TemplateReader.UnresolvedKeyListener unresolvedKeyListener) {
+        if (resolver == null) {
+            throw new NullPointerException("resolver");
+        }
+        if (writer == null) {
+            throw new NullPointerException("writer");
+        }
+        Output output = new Output(resolver, writer, unresolvedKeyListener);
+        outputs.add(output);
+        return output;
+    }
+
+    /**
+     * Renders the template text provided by the given reader to all outputs. An output whose writer
+     * or resolver fails is not rendered any further, the others are not affected.
+     *
+     * @param in the reader providing the template text
+     * @throws IOException if the template text cannot be read
+     */
+    public void render(Reader in) throws IOException {
+        this.in = in;
+        window = new char[2 * LOOKAHEAD];
+        windowStart = 0;
+        windowLength = 0;
+        eof = false;
+        line = 1;
+        lineStart = 0;
+        countedPos = 0;
+        afterCR = false;
+        locating = false;
+        Group first = new Group(0, NORMAL);
+        for (Output output : outputs) {
+            if (output.error == null) {
+                first.outputs.add(output);
+                locating |= output.unresolvedKeyListener != null;
+            }
+        }
+        groups.clear();
+        if (!first.outputs.isEmpty()) {
+            groups.add(first);
+        }
+        try {
+            while (!groups.isEmpty()) {
+                Group group = nextGroup();
+                fill(group.pos);
+                if (group.pos == windowStart + windowLength) {
+                    groups.remove(group);
+                    continue;
+                }
+                scan(group);
+                if (group.outputs.isEmpty()) {
+                    groups.remove(group);
+                }
+            }
+        } finally {
+            this.in = null;
+            window = null;
+            groups.clear();
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return the group with the lowest position, joined with all groups continuing identically
+     */
+    private Group nextGroup() {
+        Group next = groups.get(0);
+        for (Group group : groups) {
+            if (group.pos < next.pos) {
+                next = group;
+            }
+        }
+        Iterator<Group> iterator = groups.iterator();
+        while (iterator.hasNext()) {
+            Group group = iterator.next();
+            if (group != next && group.pos == next.pos && group.state == next.state) {
+                next.outputs.addAll(group.outputs);
+                iterator.remove();
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Scans the next token of the given group and writes it to the outputs of the group. Literal runs
+     * end before the position of the next group, so that groups can be joined there.
+     */
+    private void scan(Group group) {
+        long limit = windowStart + windowLength;
+        for (Group other : groups) {
+            if (other.pos > group.pos && other.pos < limit) {
+                limit = other.pos;
+            }
+        }
+        int start = (int) (group.pos - windowStart);
+        int end = (int) (limit - windowStart);
+        int i = start;
+        if (group.state == RAW_TO_BRACE) {
+            while (i < end && window[i] != '}') {
+                i++;
+            }
+            if (i < end) {
+                i++;
+                group.state = NORMAL;
+            }
+        } else if (group.state == RAW_IDENTIFIER) {
+            while (i < end && isIdentifierPart(window[i])) {
+                i++;
+            }
+            if (i < end) {
+                i++; // the terminating character is not scanned
+                group.state = NORMAL;
+            }
+        } else if (window[i] != keyIndicator) {
+            while (i < end && window[i] != keyIndicator) {
+                i++;
+            }
+        } else {
+            scanKey(group, start);
+            return;
+        }
+        write(group, start, i - start);
+        group.pos += i - start;
+    }
+
+    /**
+     * Scans a key reference starting with the key indicator at the given window index. At least
+     * {@link #LOOKAHEAD} characters are available, unless the end of the text is reached.
+     */
+    private void scanKey(Group group, int start) {
+        int q = start + 1;
+        if (q == windowLength) {
+            write(group, start, 1);
+            group.pos++;
+            return;
+        }
+        char c = window[q];
+        if (c == '{') {  // ${key}?
+            int max = Math.min(windowLength - 1, start + TemplateReader.MAX_KEY_LENGTH);
+            int r = q + 1;
+            while (r <= max && window[r] != '}') {
+                r++;
+            }
+            if (r > max) {
+                // unterminated, or overlong and passed through up to the closing brace
+                write(group, start, r - start);
+                group.pos += r - start;
+                group.state = r < windowLength ? RAW_TO_BRACE : NORMAL;
+                return;
+            }
+            String key = new String(window, q + 1, r - q - 1);
+            int next = r + 1;
+            boolean branch = next < windowLength && window[next] == keyIndicator;
+            List<Output> resolved = writeKey(group, Expression.parse(key), key, start, next - start, branch);
+            group.pos += next - start;
+            if (branch && !resolved.isEmpty()) {
+                if (resolved.size() == group.outputs.size()) {
+                    group.pos++;
+                } else {
+                    group.outputs.removeAll(resolved);
+                    Group resolvedGroup = new Group(group.pos + 1, NORMAL);
+                    resolvedGroup.outputs.addAll(resolved);
+                    groups.add(resolvedGroup);
+                }
+            }
+        } else if (Character.isJavaIdentifierStart(c)) { // $key?
+            int max = Math.min(windowLength, start + TemplateReader.MAX_KEY_LENGTH + 1);
+            int r = q + 1;
+            while (r < max && isIdentifierPart(window[r])) {
+                r++;
+            }
+            if (r - start > TemplateReader.MAX_KEY_LENGTH) {
+                // overlong, passed through like unresolved
+                write(group, start, r - start);
+                group.pos += r - start;
+                group.state = RAW_IDENTIFIER;
+                return;
+            }
+            String key = new String(window, q, r - q);
+            writeKey(group, Expression.key(key), key, start, r - start, false);
+            if (r < windowLength) {
+                write(group, r, 1); // the terminating character is not scanned
+                r++;
+            }
+            group.pos += r - start;
+        } else {
+            write(group, start, 2); // c is not scanned
+            group.pos += 2;
+        }
+    }
+
+    /**
+     * Writes the value of a key reference, or its raw text if the key does not resolve.
+     *
+     * @param branch true, if the key indicator following the reference is passed through if the key resolves
+     * @return the outputs which have resolved the key
+     */
+    private List<Output> writeKey(Group group, Expression expression, String key, int start, int length,
+                                  boolean branch) {
+        String raw = null;
+        int column = 0;
+        if (locating) {
+            countLines(windowStart + start);
+            column = (int) (windowStart + start - lineStart + 1);
+        }
+        List<Output> resolved = new ArrayList<Output>();
+        Iterator<Output> iterator = group.outputs.iterator();
+        while (iterator.hasNext()) {
+            Output output = iterator.next();
+            try {
+                Object value = expression.evaluate(output.resolver);
+                if (value != null) {
+                    output.writer.write(value.toString());
+                    if (branch) {
+                        output.writer.write(keyIndicator);
+                    }
+                    resolved.add(output);
+                } else {
+                    if (raw == null) {
+                        raw = new String(window, start, length);
+                    }
+                    output.writer.write(raw);
+                    if (output.unresolvedKeyListener != null) {
+                        output.unresolvedKeyListener.keyUnresolved(key, line, column);
+                    }
+                }
+            } catch (IOException e) {
+                output.error = e;
+                iterator.remove();
+            } catch (RuntimeException e) {
+                output.error = e;
+                iterator.remove();
+            }
+        }
+        return resolved;
+    }
+
+    private void write(Group group, int start, int length) {
+        Iterator<Output> iterator = group.outputs.iterator();
+        while (iterator.hasNext()) {
+            Output output = iterator.next();
+            try {
+                output.writer.write(window, start, length);
+            } catch (IOException e) {
+                output.error = e;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Moves the window to the given position and fills it, unless it holds enough characters from
+     * that position on. The position must not be ahead of any group.
+     */
+    private void fill(long pos) throws IOException {
+        if (eof || windowStart + windowLength - pos >= LOOKAHEAD) {
+            return;
+        }
+        if (locating) {
+            countLines(pos);
+        }
+        int offset = (int) (pos - windowStart);
+        System.arraycopy(window, offset, window, 0, windowLength - offset);
+        windowStart = pos;
+        windowLength -= offset;
+        while (windowLength < window.length) {
+            int n = in.read(window, windowLength, window.length - windowLength);
+            if (n == -1) {
+                eof = true;
+                break;
+            }
+            windowLength += n;
+        }
+    }
+
+    /**
+     * Counts the line breaks in the window up to the given position. LF, CR/LF and a single CR
+     * count as one line break each.
+     */
+    private void countLines(long pos) {
+        int end = (int) (pos - windowStart);
+        for (int i = (int) (countedPos - windowStart); i < end; i++) {
+            char c = window[i];
+            if (c == '\n') {
+                if (!afterCR) {
+                    line++;
+                }
+                lineStart = windowStart + i + 1;
+                afterCR = false;
+            } else if (c == '\r') {
+                line++;
+                lineStart = windowStart + i + 1;
+                afterCR = true;
+            } else {
+                afterCR = false;
+            }
+        }
+        if (pos > countedPos) {
+            countedPos = pos;
+        }
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isJavaIdentifierPart(c) || c == '.';
+    }
+
+    /**
+     * An output of the renderer.
+     */
+    public static class Output {
+
+        private final TemplateReader.Resolver resolver;
+        private final Writer writer;
+        private final TemplateReader.UnresolvedKeyListener unresolvedKeyListener;
+        private Exception error;
+
+        private Output(TemplateReader.Resolver resolver, Writer writer,
+                       TemplateReader.UnresolvedKeyListener unresolvedKeyListener) {
+            this.resolver = resolver;
+            this.writer = writer;
+            this.unresolvedKeyListener = unresolvedKeyListener;
+        }
+
+        /**
+         * @return the I/O error of the writer or the runtime exception of the resolver which has ended
+         *         rendering of this output, or null
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Outputs which scan the text at the same position in the same state.
+     */
+    private static class Group {
+
+        final List<Output> outputs = new ArrayList<Output>();
+        long pos;
+        int state;
+
+        Group(long pos, int state) {
+            this.pos = pos;
+            this.state = state;
+        }
+    }
+}
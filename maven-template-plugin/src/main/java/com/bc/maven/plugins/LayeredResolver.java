@@ -0,0 +1,64 @@
+package com.bc.maven.plugins;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An immutable resolver which looks up a key in a fixed sequence of maps and returns the first
+ * non-null value. The maps must not be modified while the resolver is in use.
+ */
+public class LayeredResolver implements TemplateReader.Resolver {
+
+    private final Map[] layers;
+
+    /**
+     * Constructs a layered resolver.
+     *
+     * @param layers the maps in lookup order
+     */
+    public LayeredResolver(Map... layers) {
+        for (Map layer : layers) {
+            if (layer == null) {
+                throw new NullPointerException("layer");
+            }
+        }
+        this.layers = layers.clone();
+    }
+
+    /**
+     * Constructs a layered resolver.
+     *
+     * @param layers the maps in lookup order
+     */
+    public LayeredResolver(List<Map> layers) {
+        this(layers.toArray(new Map[layers.size()]));
+    }
+
+    public Object resolve(String key) {
+        for (Map layer : layers) {
+            Object value = layer.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies the entries of the given properties into an unsynchronized map. Defaults of the
+     * properties are not copied.
+     *
+     * @param properties the properties
+     * @return the map
+     */
+    public static Map<String, Object> snapshot(Properties properties) {
+        Properties copy = (Properties) properties.clone();
+        Map<String, Object> map = new HashMap<String, Object>(2 * copy.size());
+        for (Map.Entry<Object, Object> entry : copy.entrySet()) {
+            map.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return map;
+    }
+}
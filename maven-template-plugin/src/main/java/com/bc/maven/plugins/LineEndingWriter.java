@@ -0,0 +1,96 @@
+package com.bc.maven.plugins;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A writer which replaces every LF and every CR/LF pair written to it by a given line separator.
+ * Single CR characters are passed through unchanged. A CR/LF pair may be split across write calls,
+ * therefore a trailing CR is held back until the next character is known or the writer is closed,
+ * it is not written by {@link #flush()}.
+ */
+public class LineEndingWriter extends FilterWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String lineSeparator;
+    private boolean pendingCR;
+    private char[] stringBuffer;
+
+    /**
+     * Constructs a line ending writer.
+     *
+     * @param out           the underlying writer, should be buffered
+     * @param lineSeparator the line separator, usually "\n" or "\r\n"
+     */
+    public LineEndingWriter(Writer out, String lineSeparator) {
+        super(out);
+        if (lineSeparator == null) {
+            throw new NullPointerException("lineSeparator");
+        }
+        this.lineSeparator = lineSeparator;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        synchronized (lock) {
+            write(new char[]{(char) c}, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(char cbuf[], int off, int len) throws IOException {
+        synchronized (lock) {
+            int start = off;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                char c = cbuf[i];
+                if (c == '\n') {
+                    out.write(cbuf, start, i - start);
+                    out.write(lineSeparator);
+                    pendingCR = false;
+                    start = i + 1;
+                } else if (c == '\r') {
+                    out.write(cbuf, start, i - start);
+                    if (pendingCR) {
+                        out.write('\r');
+                    }
+                    pendingCR = true;
+                    start = i + 1;
+                } else if (pendingCR) {
+                    out.write('\r');
+                    pendingCR = false;
+                }
+            }
+            out.write(cbuf, start, end - start);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        synchronized (lock) {
+            if (stringBuffer == null) {
+                stringBuffer = new char[BUFFER_SIZE];
+            }
+            while (len > 0) {
+                int n = Math.min(len, stringBuffer.length);
+                str.getChars(off, off + n, stringBuffer, 0);
+                write(stringBuffer, 0, n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (pendingCR) {
+                out.write('\r');
+                pendingCR = false;
+            }
+        }
+        super.close();
+    }
+}
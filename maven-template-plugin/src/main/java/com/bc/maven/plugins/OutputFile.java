@@ -0,0 +1,164 @@
+package com.bc.maven.plugins;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An output file which is written to a temporary file in the same directory first. The temporary file
+ * replaces the output file by an atomic rename once it has been {@link #commit() committed}, so that
+ * readers never see a partially written output file. An existing output file with identical content
+ * is left untouched, so that its modification time is preserved.
+ */
+public class OutputFile {
+
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final Charset charset;
+    private final int bufferSize;
+    private Path tempFile;
+    private Writer writer;
+    private long size;
+
+    /**
+     * Constructs an output file.
+     *
+     * @param file       the output file
+     * @param charset    the charset used to encode the output
+     * @param bufferSize the size of the output buffer in characters
+     */
+    public OutputFile(File file, Charset charset, int bufferSize) {
+        this.file = file;
+        this.charset = charset;
+        this.bufferSize = bufferSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of bytes written, valid after the output file has been committed
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Opens a buffered writer on a new temporary file. The caller must close the writer before
+     * the output file is committed.
+     *
+     * @return the writer
+     * @throws IOException if an I/O error occurs
+     */
+    public Writer openWriter() throws IOException {
+        // File.createTempFile() respects the umask, Files.createTempFile() would restrict permissions to the owner
+        File dir = file.getAbsoluteFile().getParentFile();
+        tempFile = File.createTempFile("." + file.getName() + "-", ".tmp", dir).toPath();
+        FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        writer = new BufferedWriter(Channels.newWriter(channel, encoder, bufferSize), bufferSize);
+        return writer;
+    }
+
+    /**
+     * Replaces the output file by the temporary file, unless the output file already has the same content.
+     *
+     * @return true, if the output file has been replaced, false if it has been left untouched
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean commit() throws IOException {
+        writer.close();
+        size = Files.size(tempFile);
+        Path target = file.toPath();
+        if (hasSameContent(tempFile, target)) {
+            Files.delete(tempFile);
+            tempFile = null;
+            return false;
+        }
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        tempFile = null;
+        return true;
+    }
+
+    /**
+     * Deletes the temporary file, if it has not been committed.
+     */
+    public void discard() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        if (tempFile != null) {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                // ignore
+            }
+            tempFile = null;
+        }
+    }
+
+    /**
+     * Compares the sizes of the files first and their contents only if the sizes are equal.
+     */
+    private static boolean hasSameContent(Path path1, Path path2) throws IOException {
+        if (!Files.isRegularFile(path2) || Files.size(path1) != Files.size(path2)) {
+            return false;
+        }
+        FileChannel channel1 = FileChannel.open(path1, StandardOpenOption.READ);
+        try {
+            FileChannel channel2 = FileChannel.open(path2, StandardOpenOption.READ);
+            try {
+                ByteBuffer buffer1 = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+                ByteBuffer buffer2 = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+                while (true) {
+                    int n1 = readFully(channel1, buffer1);
+                    int n2 = readFully(channel2, buffer2);
+                    if (n1 != n2 || !buffer1.equals(buffer2)) {
+                        return false;
+                    }
+                    if (n1 < COMPARE_BUFFER_SIZE) {
+                        return true;
+                    }
+                }
+            } finally {
+                channel2.close();
+            }
+        } finally {
+            channel1.close();
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // continue reading
+        }
+        buffer.flip();
+        return buffer.remaining();
+    }
+}
@@ -57,6 +57,13 @@ public class Template {
      */
     private String lineEnding;
 
+    /**
+     * Encoding of the source template and the output files. Defaults to the encoding given for all templates.
+     *
+     * @parameter
+     */
+    private String encoding;
+
 
     public File getSource() {
         return source;
@@ -77,4 +84,8 @@ public class Template {
     public String getLineEnding() {
         return lineEnding;
     }
+
+    public String getEncoding() {
+        return encoding;
+    }
 }
@@ -6,13 +6,37 @@ import org.apache.maven.model.FileSet;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.DirectoryScanner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.text.MessageFormat;
 
 // todo - Look at this interesting API:
@@ -61,54 +85,482 @@ public class TemplateMojo extends AbstractMojo {
      * @required
      */
     private Template[] templates;
+
+    /**
+     * Number of threads used to render output files. Defaults to the number of available processors.
+     *
+     * @parameter expression="${template.threads}"
+     */
+    private Integer threads;
+
+    /**
+     * Forces all output files to be created, even if their inputs have not changed since the last build.
+     *
+     * @parameter expression="${template.force}" default-value="false"
+     */
+    private boolean force;
+
+    /**
+     * Expands key references contained in property values, recursively. Each key is expanded
+     * once per filter file, cyclic references fail the build.
+     *
+     * @parameter expression="${template.expandNested}" default-value="false"
+     */
+    private boolean expandNested;
+
+    /**
+     * Encoding of the template sources and output files. Can be overridden for each template.
+     *
+     * @parameter expression="${project.build.sourceEncoding}"
+     */
+    private String encoding;
+
+    /**
+     * Size of the buffer used to write an output file, in characters.
+     *
+     * @parameter expression="${template.bufferSize}" default-value="65536"
+     */
+    private int bufferSize;
+
+    /**
+     * Logs a table of timings and counters per template and output file, and writes them
+     * to <code>template-report.json</code> in the output directory.
+     *
+     * @parameter expression="${template.report}" default-value="false"
+     */
+    private boolean report;
+
+    /**
+     * Size in bytes from which template sources are decoded once and rendered from the decoded text,
+     * instead of being compiled. Decoded sources are not cached.
+     *
+     * @parameter expression="${template.decodeThreshold}" default-value="4194304"
+     */
+    private long decodeThreshold;
+
+    /**
+     * Size in bytes from which template sources are streamed from their file, instead of being decoded
+     * once. A streamed source is read once for all of its output files, rendering needs a fixed amount of
+     * memory per output file, independent of the size of the source and of the output.
+     *
+     * @parameter expression="${template.streamThreshold}" default-value="67108864"
+     */
+    private long streamThreshold;
+
+    /**
+     * Fails the build if a template contains key references which cannot be resolved. Output files
+     * are created anyway, but are not considered up to date in the next build.
+     *
+     * @parameter expression="${template.failOnUnresolved}" default-value="false"
+     */
+    private boolean failOnUnresolved;
+
+    private static final String STATE_FILE_NAME = "template-plugin.state";
+    private static final String REPORT_FILE_NAME = "template-report.json";
     private static final String LF = "\n";
     private static final String CRLF = "\r\n";
+    private static final int MAX_CACHED_TEMPLATES = 64;
+    private static final int MAX_CACHED_FILTERS = 1024;
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
+    private static final int MAX_UNRESOLVED_KEYS = 1000;
+    /**
+     * Maximum number of output files rendered in one pass over a streamed source. All of them are open
+     * at the same time, each with an output buffer of {@link #bufferSize} characters.
+     */
+    private static final int MAX_STREAMED_OUTPUTS = 256;
+
+    /**
+     * Parsed filter files, keyed by path, modification time and size. Kept for the lifetime of this mojo,
+     * that is one execution, or the whole run of the watch goal.
+     */
+    private final Map<String, Filter> filters = createCache(MAX_CACHED_FILTERS);
+
+    /**
+     * Compiled template sources, keyed by source path, modification time, size and encoding.
+     */
+    private final Map<String, SourceTemplate> sourceTemplates = createCache(MAX_CACHED_TEMPLATES);
+
+    /**
+     * Paths of streamed template sources whose recorded content hash and keys must not be used, because
+     * the sources may have changed without a change of their modification time and size.
+     */
+    private final Set<String> invalidatedSources = new HashSet<String>();
+
+    private TemplateState state;
+    private Map<String, Object> projectProperties;
+    private Map<String, Object> systemProperties;
+    private String projectPropertiesHash;
+    private TemplateReport templateReport;
+    private Map<String, File[]> scannedFilterSets;
+    private Set<Filter> readFilters;
 
 
     public void execute() throws MojoExecutionException {
         checkConfig();
+        generate(templates);
+    }
+
+    /**
+     * Creates the output files of the given templates, unless they are up to date.
+     *
+     * @param templates the templates, a subset of the configured ones
+     * @throws MojoExecutionException if an output file cannot be created
+     */
+    protected void generate(Template[] templates) throws MojoExecutionException {
+        templateReport = new TemplateReport();
+        scannedFilterSets = new HashMap<String, File[]>();
+        readFilters = new HashSet<Filter>();
+        state = TemplateState.load(new File(outputDirectory, STATE_FILE_NAME));
+        projectProperties = LayeredResolver.snapshot(project.getProperties());
+        systemProperties = LayeredResolver.snapshot(System.getProperties());
+        projectPropertiesHash = TemplateState.hash(projectProperties);
+        List<RenderTask> tasks = new ArrayList<RenderTask>();
         for (Template template : templates) {
-            processTemplate(template);
+            addRenderTasks(template, tasks);
+        }
+        Map<String, List<String>> unresolvedKeys = new LinkedHashMap<String, List<String>>();
+        long unresolvedCount = render(tasks, unresolvedKeys);
+        try {
+            state.save();
+        } catch (IOException e) {
+            getLog().warn("Failed to save template state: " + e.getMessage());
         }
+        templateReport.finish();
+        if (report) {
+            templateReport.log(getLog());
+            File reportFile = new File(outputDirectory, REPORT_FILE_NAME);
+            try {
+                templateReport.write(reportFile);
+            } catch (IOException e) {
+                getLog().warn("Failed to write template report " + reportFile + ": " + e.getMessage());
+            }
+        }
+        checkUnresolvedKeys(unresolvedKeys, unresolvedCount);
+    }
+
+    /**
+     * @param unresolvedKeys  the filter file names of each unresolved key reference, keyed by its location
+     * @param unresolvedCount the number of unresolved key references in all output files
+     */
+    private void checkUnresolvedKeys(Map<String, List<String>> unresolvedKeys, long unresolvedCount)
+            throws MojoExecutionException {
+        if (unresolvedKeys.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, List<String>> entry : unresolvedKeys.entrySet()) {
+            String message = MessageFormat.format("{0} (filters: {1})", entry.getKey(), join(entry.getValue()));
+            if (failOnUnresolved) {
+                getLog().error(message);
+            } else {
+                getLog().debug(message);
+            }
+        }
+        String message = MessageFormat.format("{0} unresolved key reference(s) at {1} location(s)",
+                                              unresolvedCount, unresolvedKeys.size());
+        if (failOnUnresolved) {
+            throw new MojoExecutionException(message);
+        }
+        getLog().info(message + ", run with -X for details");
     }
 
-    private void processTemplate(Template template) throws MojoExecutionException {
+    private static String join(List<String> strings) {
+        StringBuilder sb = new StringBuilder();
+        for (String string : strings) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(string);
+        }
+        return sb.toString();
+    }
+
+    private void addRenderTasks(Template template, List<RenderTask> tasks) throws MojoExecutionException {
         File sourceTemplate = template.getSource();
         if (!sourceTemplate.exists()) {
             getLog().warn("Source template not found: " + sourceTemplate.getPath());
             return;
         }
         File outputDirectory = getOutputDirectory(template);
-        String outputFileNamePattern = template.getOutputFileNamePattern();
+        Charset charset = getCharset(template);
+        // the source is read at most once, all filters are rendered from the same compiled template
+        TemplateReport.TemplateEntry reportEntry = templateReport.addTemplate(sourceTemplate);
+        SourceTemplate source = getSourceTemplate(sourceTemplate, charset, reportEntry);
+        CompiledTemplate outputFileNameTemplate = CompiledTemplate.compile(template.getOutputFileNamePattern(), '@');
+        // the hash of a modified streamed source is known once it has been rendered
+        String sourceHash = source.contentHash != null ? getSourceHash(source.contentHash, source.keys) : null;
 
         File[] filterFiles = getFilters(template);
         for (File filterFile : filterFiles) {
-            Properties properties = getProperties(filterFile);
-            String filterFileName = filterFile.getName();
-            properties.put("filter", filterFileName);
-            properties.put("filterBaseName", getBaseName(filterFileName));
-            properties.put("filterExtension", getExtension(filterFileName));
-            String sourceFileName = sourceTemplate.getName();
-            properties.put("source", sourceFileName);
-            properties.put("sourceBaseName", getBaseName(sourceFileName));
-            properties.put("sourceExtension", getExtension(sourceFileName));
-            String outputFileName = createOutpuFileName(outputFileNamePattern, properties);
-            File outputFile = new File(outputDirectory, outputFileName);
-            properties.putAll(project.getProperties());
-            process(sourceTemplate, outputFile, template.getLineEnding(), properties);
-        }
-    }
-
-    private static String createOutpuFileName(String outputFileNamePattern, Properties properties) {
-        TemplateReader templateReader = new TemplateReader(new StringReader(outputFileNamePattern), properties);
-        templateReader.setKeyIndicator('@');
+            Filter filter = getFilter(filterFile);
+            // the bytes of a filter are reported for its first output only
+            long filterBytesRead = readFilters.add(filter) ? filter.size : 0;
+            tasks.add(new RenderTask(template, source, outputFileNameTemplate, outputDirectory, filterFile, filter,
+                                     filterBytesRead, charset, sourceHash, reportEntry));
+        }
+    }
+
+    /**
+     * @return the hash of the source content and of the system properties referenced by the source
+     */
+    private String getSourceHash(String contentHash, Set<String> keys) {
+        // only the system properties referenced by the template are tracked, most others vary between builds
+        Map<String, Object> referencedSystemProperties = new HashMap<String, Object>();
+        for (String key : keys) {
+            referencedSystemProperties.put(key, systemProperties.get(key));
+        }
+        return TemplateState.hash(contentHash, TemplateState.hash(referencedSystemProperties));
+    }
+
+    /**
+     * Renders all tasks on a fixed thread pool. Results are collected in task order, so that logging
+     * and the reported failure do not depend on thread scheduling. The tasks of a streamed source are
+     * rendered together by a {@link StreamRenderTask}.
+     *
+     * @param unresolvedKeys receives the filter file names of each unresolved key reference, keyed by
+     *                       "source:line:column: key"
+     * @return the number of unresolved key references in all output files, including the ones not listed
+     */
+    private long render(List<RenderTask> tasks, Map<String, List<String>> unresolvedKeys)
+            throws MojoExecutionException {
+        int threadCount = threads != null ? threads : Runtime.getRuntime().availableProcessors();
+        if (threadCount < 1) {
+            throw new MojoExecutionException("<threads> must be at least 1");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, Math.max(tasks.size(), 1)));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+            Map<RenderTask, Future<?>> streamFutures = new HashMap<RenderTask, Future<?>>();
+            for (int i = 0; i < tasks.size(); i++) {
+                RenderTask task = tasks.get(i);
+                if (task.source.file == null) {
+                    futures.add(executor.submit(task));
+                } else if (streamFutures.containsKey(task)) {
+                    futures.add(streamFutures.get(task));
+                } else {
+                    List<RenderTask> streamTasks = new ArrayList<RenderTask>();
+                    for (int j = i; j < tasks.size() && streamTasks.size() < MAX_STREAMED_OUTPUTS; j++) {
+                        if (tasks.get(j).source == task.source) {
+                            streamTasks.add(tasks.get(j));
+                        }
+                    }
+                    Future<?> future = executor.submit(new StreamRenderTask(task.source, streamTasks));
+                    for (RenderTask streamTask : streamTasks) {
+                        streamFutures.put(streamTask, future);
+                    }
+                    futures.add(future);
+                }
+            }
+            long unresolvedCount = 0;
+            int writtenCount = 0;
+            int unchangedCount = 0;
+            int upToDateCount = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                RenderTask task = tasks.get(i);
+                Throwable failure;
+                try {
+                    futures.get(i).get();
+                    failure = task.failure;
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while creating files", e);
+                }
+                if (failure instanceof MojoExecutionException) {
+                    throw (MojoExecutionException) failure;
+                }
+                if (failure != null) {
+                    String output = task.outputFile != null ? task.outputFile.getPath() : "output file";
+                    throw new MojoExecutionException("Error creating " + output + " from " + task.template.getSource()
+                                                     + " with filter " + task.filterFile + ": " + failure, failure);
+                }
+                String status;
+                if (task.upToDate) {
+                    getLog().debug("Skipped " + task.outputFile + " (up to date)");
+                    upToDateCount++;
+                    status = "up to date";
+                } else if (task.unchanged) {
+                    getLog().debug("Skipped " + task.outputFile + " (unchanged)");
+                    unchangedCount++;
+                    status = "unchanged";
+                } else {
+                    getLog().debug("Created " + task.outputFile);
+                    writtenCount++;
+                    status = "written";
+                }
+                if (task.unresolvedKeys != null) {
+                    unresolvedCount += task.unresolvedKeys.getCount();
+                    String sourcePath = task.template.getSource().getPath();
+                    for (UnresolvedKeyCollector.UnresolvedKey key : task.unresolvedKeys.getUnresolvedKeys()) {
+                        String location = sourcePath + ':' + key;
+                        List<String> filterNames = unresolvedKeys.get(location);
+                        if (filterNames == null) {
+                            filterNames = new ArrayList<String>();
+                            unresolvedKeys.put(location, filterNames);
+                        }
+                        if (!filterNames.contains(task.filterFile.getName())) {
+                            filterNames.add(task.filterFile.getName());
+                        }
+                    }
+                    long omittedCount = task.unresolvedKeys.getCount()
+                                        - task.unresolvedKeys.getUnresolvedKeys().size();
+                    if (omittedCount > 0) {
+                        getLog().debug(MessageFormat.format("{0}: {1} more unresolved key reference(s) not listed",
+                                                            task.outputFile, omittedCount));
+                    }
+                }
+                task.reportEntry.addOutput(task.filterFile, task.outputFile, status, task.duration,
+                                           task.filterBytesRead, task.bytesWritten,
+                                           task.lookupCount, task.unresolvedCount);
+            }
+            getLog().info(MessageFormat.format("{0} file(s) written, {1} skipped ({2} unchanged, {3} up to date)",
+                                               writtenCount, unchangedCount + upToDateCount,
+                                               unchangedCount, upToDateCount));
+            return unresolvedCount;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SourceTemplate getSourceTemplate(File source, Charset charset, TemplateReport.TemplateEntry reportEntry)
+            throws MojoExecutionException {
+        long startTime = System.nanoTime();
+        if (source.length() >= streamThreshold) {
+            // the bytes of a streamed source are reported once it has been rendered
+            SourceTemplate sourceTemplate = streamSourceTemplate(source, charset);
+            reportEntry.setPrepared(false, 0, System.nanoTime() - startTime);
+            return sourceTemplate;
+        }
+        if (source.length() >= decodeThreshold) {
+            // large sources are not cached, they would keep their decoded text in memory
+            try {
+                SourceTemplate sourceTemplate = decodeSourceTemplate(source, charset);
+                reportEntry.setPrepared(false, source.length(), System.nanoTime() - startTime);
+                return sourceTemplate;
+            } catch (IOException e) {
+                throw new MojoExecutionException("Error reading template " + source, e);
+            }
+        }
+        String cacheKey = source.getAbsolutePath() + '@' + source.lastModified() + '#' + source.length() + '/' + charset;
+        SourceTemplate sourceTemplate = sourceTemplates.get(cacheKey);
+        long bytesRead = 0;
+        if (sourceTemplate == null) {
+            try {
+                byte[] content = readFully(openSource(source), source.length());
+                bytesRead = content.length;
+                Reader reader = new InputStreamReader(new ByteArrayInputStream(content), charset);
+                CompiledTemplate compiledTemplate = CompiledTemplate.compile(reader);
+                sourceTemplate = SourceTemplate.compiled(compiledTemplate, TemplateState.hash(content));
+            } catch (IOException e) {
+                throw new MojoExecutionException("Error reading template " + source, e);
+            }
+            sourceTemplates.put(cacheKey, sourceTemplate);
+            reportEntry.setPrepared(false, bytesRead, System.nanoTime() - startTime);
+        } else {
+            reportEntry.setPrepared(true, 0, System.nanoTime() - startTime);
+        }
+        return sourceTemplate;
+    }
+
+    /**
+     * Reads and decodes the source once, hashing it in the same pass. The decoded text is kept in memory
+     * and rendered by a {@link TemplateReader} for each filter.
+     */
+    private SourceTemplate decodeSourceTemplate(File source, Charset charset) throws IOException {
+        DigestInputStream stream = TemplateState.createHashingStream(openSource(source));
+        // malformed input is replaced, as by the decoder of a compiled source
+        Reader reader = new InputStreamReader(stream, charset);
         try {
-            return templateReader.readAll();
+            // a source decodes to at most as many chars as it has bytes in all supported encodings
+            char[] chars = new char[(int) Math.min(source.length() + 1, Integer.MAX_VALUE - 8)];
+            int length = 0;
+            int n;
+            while ((n = reader.read(chars, length, chars.length - length)) != -1) {
+                length += n;
+                if (length == chars.length) {
+                    chars = Arrays.copyOf(chars, (int) Math.min(2L * chars.length, Integer.MAX_VALUE - 8));
+                }
+            }
+            CharBuffer text = CharBuffer.wrap(chars, 0, length);
+            return SourceTemplate.decoded(text, scanKeys(text), TemplateState.hash(stream));
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Creates a source template which is streamed from its file once for all filters, see {@link StreamRenderTask}.
+     * The content hash and keys of the source are taken from the state if the source has the same size and
+     * modification time as when it was rendered last, otherwise they are computed while it is rendered.
+     */
+    private SourceTemplate streamSourceTemplate(File source, Charset charset) {
+        String fingerprint = String.valueOf(source.lastModified()) + '#' + source.length() + '/' + charset;
+        TemplateState.SourceRecord record = null;
+        if (!invalidatedSources.remove(source.getAbsolutePath())) {
+            record = state.getSource(source, fingerprint);
+        }
+        if (record != null) {
+            return SourceTemplate.streamed(source, charset, fingerprint, record.getKeys(), record.getContentHash());
+        }
+        return SourceTemplate.streamed(source, charset, fingerprint, null, null);
+    }
+
+    /**
+     * Opens a template source for reading.
+     *
+     * @param source the template source
+     * @return the stream
+     * @throws IOException if the source cannot be opened
+     */
+    InputStream openSource(File source) throws IOException {
+        return new FileInputStream(source);
+    }
+
+    /**
+     * Scans the keys of a template text, assuming that no key resolves. Keys which directly follow a
+     * resolved <code>${<i>key</i>}</code> are therefore not found.
+     */
+    private static Set<String> scanKeys(CharBuffer text) throws IOException {
+        KeyScanner keyScanner = new KeyScanner();
+        TemplateReader.createUnsynchronized(text, keyScanner).skip(Long.MAX_VALUE);
+        return keyScanner.keys;
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
         } catch (IOException e) {
-            return outputFileNamePattern;
+            // ignore
         }
     }
 
+    private static byte[] readFully(File file) throws IOException {
+        return readFully(new FileInputStream(file), file.length());
+    }
+
+    private static byte[] readFully(InputStream stream, long length) throws IOException {
+        try {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.min(length, Integer.MAX_VALUE));
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                content.write(buffer, 0, n);
+            }
+            return content.toByteArray();
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private Charset getCharset(Template template) {
+        String charsetName = template.getEncoding() != null ? template.getEncoding() : encoding;
+        return charsetName != null ? Charset.forName(charsetName) : Charset.defaultCharset();
+    }
+
     private static String getExtension(String name) {
         int i = name.lastIndexOf('.');
         if (i > 0) {
@@ -126,12 +578,21 @@ public class TemplateMojo extends AbstractMojo {
         return name;
     }
 
-    private static File[] getFilters(Template template) throws MojoExecutionException {
+    /**
+     * Scans the filter set of the given template. Each distinct filter set is scanned once per execution.
+     */
+    private File[] getFilters(Template template) throws MojoExecutionException {
         FileSet filterSet = template.getFilterSet();
         String directory = filterSet.getDirectory();
         if (!new File(directory).exists()) {
             throw new MojoExecutionException("Filter directory does not exist: " + directory);
         }
+        String cacheKey = new File(directory).getAbsolutePath() + '|' + filterSet.getIncludes() + '|'
+                          + filterSet.getExcludes();
+        File[] files = scannedFilterSets.get(cacheKey);
+        if (files != null) {
+            return files;
+        }
 
         DirectoryScanner directoryScanner = new DirectoryScanner();
         directoryScanner.addDefaultExcludes();
@@ -140,47 +601,74 @@ public class TemplateMojo extends AbstractMojo {
         directoryScanner.setExcludes((String[]) filterSet.getExcludes().toArray(new String[0]));
         directoryScanner.scan();
         String[] filePaths = directoryScanner.getIncludedFiles();
-        File[] files = new File[filePaths.length];
+        files = new File[filePaths.length];
         for (int i = 0; i < filePaths.length; i++) {
             files[i] = new File(directory, filePaths[i]);
         }
+        scannedFilterSets.put(cacheKey, files);
         return files;
     }
 
-    private void process(File source, File outputFile, String lineEnding, Properties properties) throws
-                                                                                                 MojoExecutionException {
-        getLog().debug("Creating " + outputFile);
-        FileReader fr = null;
-        FileWriter fw = null;
+    /**
+     * Reads, hashes and parses the given filter file, unless it is cached with the same modification time and size.
+     */
+    private Filter getFilter(File filterFile) throws MojoExecutionException {
+        String cacheKey = filterFile.getAbsolutePath() + '@' + filterFile.lastModified() + '#' + filterFile.length();
+        Filter filter = filters.get(cacheKey);
+        if (filter == null) {
+            try {
+                byte[] content = readFully(filterFile);
+                Properties properties = new Properties();
+                properties.load(new ByteArrayInputStream(content));
+                filter = new Filter(LayeredResolver.snapshot(properties), TemplateState.hash(content),
+                                    content.length);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Error reading filter " + filterFile, e);
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException("Error reading filter " + filterFile + ": " + e.getMessage(), e);
+            }
+            filters.put(cacheKey, filter);
+        }
+        return filter;
+    }
+
+    /**
+     * @return true, if the output file has been written, false if it already had the rendered content
+     */
+    private static boolean process(SourceTemplate source, OutputFile output, String lineEnding,
+                                   TemplateReader.Resolver resolver,
+                                   TemplateReader.UnresolvedKeyListener unresolvedKeyListener)
+            throws MojoExecutionException {
         try {
-            fr = new FileReader(source);
-            TemplateReader templateReader = new TemplateReader(fr, properties);
-            fw = new FileWriter(outputFile);
-            String text = templateReader.readAll();
-            if ("dos".equals(lineEnding)) {
-                text = text.replace(CRLF, LF).replace(LF, CRLF);
-            } else if ("unix".equals(lineEnding)) {
-                text = text.replace(CRLF, LF);
-            }
-            fw.write(text);
+            Writer writer = openWriter(output, lineEnding);
+            source.render(resolver, writer, unresolvedKeyListener);
+            writer.close();
+            return output.commit();
         } catch (IOException e) {
-            throw new MojoExecutionException("Error creating file " + outputFile, e);
+            throw createError(output, e);
+        } catch (ExpandingResolver.CyclicReferenceException e) {
+            throw createError(output, e);
         } finally {
-            if (fw != null) {
-                try {
-                    fw.close();
-                } catch (IOException e) {
-                    // ignore
-                }
-            }
-            if (fr != null) {
-                try {
-                    fr.close();
-                } catch (IOException e) {
-                    // ignore
-                }
-            }
+            output.discard();
+        }
+    }
+
+    private static Writer openWriter(OutputFile output, String lineEnding) throws IOException {
+        Writer writer = output.openWriter();
+        if ("dos".equals(lineEnding)) {
+            writer = new LineEndingWriter(writer, CRLF);
+        } else if ("unix".equals(lineEnding)) {
+            writer = new LineEndingWriter(writer, LF);
         }
+        return writer;
+    }
+
+    private static MojoExecutionException createError(OutputFile output, IOException e) {
+        return new MojoExecutionException("Error creating file " + output.getFile(), e);
+    }
+
+    private static MojoExecutionException createError(OutputFile output, ExpandingResolver.CyclicReferenceException e) {
+        return new MojoExecutionException("Error creating file " + output.getFile() + ": " + e.getMessage(), e);
     }
 
     private File getOutputDirectory(Template template) {
@@ -194,29 +682,61 @@ public class TemplateMojo extends AbstractMojo {
         return outputDirectory;
     }
 
-    private static Properties getProperties(File filter) {
-        Properties p = new Properties(System.getProperties());
-        if (filter != null) {
-            FileInputStream inStream = null;
-            try {
-                inStream = new FileInputStream(filter);
-                p.load(inStream);
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                if (inStream != null) {
-                    try {
-                        inStream.close();
-                    } catch (IOException e) {
-                        // ignore
-                    }
-                }
+    private static void checkEncoding(String encoding) throws MojoExecutionException {
+        try {
+            if (encoding != null && !Charset.isSupported(encoding)) {
+                throw new MojoExecutionException("Unsupported encoding: " + encoding);
             }
+        } catch (IllegalCharsetNameException e) {
+            throw new MojoExecutionException("Illegal encoding name: " + encoding, e);
+        }
+    }
+
+    /**
+     * @return the configured templates
+     */
+    protected Template[] getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Removes the cached compiled templates and parsed filters which have been read from the given files,
+     * and ignores the recorded content hashes of streamed sources among them. Needed for files which may
+     * have changed without a change of their modification time and size.
+     *
+     * @param files the files
+     */
+    protected void invalidate(Collection<File> files) {
+        for (File file : files) {
+            String prefix = file.getAbsolutePath() + '@';
+            invalidate(sourceTemplates, prefix);
+            invalidate(filters, prefix);
+            invalidatedSources.add(file.getAbsolutePath());
         }
-        return p;
     }
 
-    private void checkConfig() throws MojoExecutionException {
+    private static void invalidate(Map<String, ?> cache, String keyPrefix) {
+        Iterator<String> iterator = cache.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(keyPrefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return a map which removes its least recently used entry when it grows beyond the given size
+     */
+    private static <V> Map<String, V> createCache(final int maxSize) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    protected void checkConfig() throws MojoExecutionException {
         if (templates == null) {
             throw new MojoExecutionException("Missing <templates>");
         }
@@ -226,8 +746,13 @@ public class TemplateMojo extends AbstractMojo {
         if (outputDirectory == null) {
             throw new MojoExecutionException("Missing <outputDirectory>");
         }
+        if (bufferSize < 1) {
+            throw new MojoExecutionException("<bufferSize> must be at least 1");
+        }
+        checkEncoding(encoding);
 
         final File cwd = new File(".").getAbsoluteFile();
+        boolean platformEncoding = false;
         for (Template template : templates) {
             final File source = template.getSource();
             if (source == null) {
@@ -237,6 +762,10 @@ public class TemplateMojo extends AbstractMojo {
                 throw new MojoExecutionException(
                         MessageFormat.format("Template source not found: {0} (cwd={1})", source, cwd));
             }
+            checkEncoding(template.getEncoding());
+            if (template.getEncoding() == null && encoding == null) {
+                platformEncoding = true;
+            }
             if (template.getFilterSet() == null) {
                 throw new MojoExecutionException("Missing <templates>/<template>/<filterSet>");
             }
@@ -246,5 +775,357 @@ public class TemplateMojo extends AbstractMojo {
                         MessageFormat.format("Filters directory not found: {0} (cwd={1})", dir, cwd));
             }
         }
+        if (platformEncoding) {
+            getLog().warn("Using platform encoding (" + Charset.defaultCharset().name()
+                          + ") to process templates, i.e. build is platform dependent!");
+        }
+    }
+
+    /**
+     * A template source, either compiled, decoded or to be streamed from its file, together with its
+     * keys and the hash of its content. The keys and hash of a streamed source are null if they are
+     * not known before it is rendered.
+     */
+    private static final class SourceTemplate {
+
+        final CompiledTemplate compiledTemplate;
+        final CharBuffer text;
+        final File file;
+        final Charset charset;
+        final String fingerprint;
+        final Set<String> keys;
+        final String contentHash;
+
+        private SourceTemplate(CompiledTemplate compiledTemplate, CharBuffer text, File file, Charset charset,
+                               String fingerprint, Set<String> keys, String contentHash) {
+            this.compiledTemplate = compiledTemplate;
+            this.text = text;
+            this.file = file;
+            this.charset = charset;
+            this.fingerprint = fingerprint;
+            this.keys = keys;
+            this.contentHash = contentHash;
+        }
+
+        static SourceTemplate compiled(CompiledTemplate compiledTemplate, String contentHash) {
+            return new SourceTemplate(compiledTemplate, null, null, null, null, compiledTemplate.getKeys(),
+                                      contentHash);
+        }
+
+        static SourceTemplate decoded(CharBuffer text, Set<String> keys, String contentHash) {
+            return new SourceTemplate(null, text, null, null, null, keys, contentHash);
+        }
+
+        static SourceTemplate streamed(File file, Charset charset, String fingerprint, Set<String> keys,
+                                       String contentHash) {
+            return new SourceTemplate(null, null, file, charset, fingerprint, keys, contentHash);
+        }
+
+        /**
+         * Renders a compiled or decoded template. Memory use is independent of the size of the output, text
+         * is transferred to the writer through a buffer of fixed size.
+         */
+        void render(TemplateReader.Resolver resolver, Writer writer,
+                    TemplateReader.UnresolvedKeyListener unresolvedKeyListener) throws IOException {
+            if (compiledTemplate != null) {
+                compiledTemplate.render(resolver, writer, unresolvedKeyListener);
+                return;
+            }
+            TemplateReader reader = TemplateReader.createUnsynchronized(text, resolver);
+            reader.setUnresolvedKeyListener(unresolvedKeyListener);
+            char[] buffer = new char[TRANSFER_BUFFER_SIZE];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * A writer which discards all text, used to scan the keys of a streamed source.
+     */
+    private static final class DiscardingWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A resolver which records all keys and resolves none.
+     */
+    private static final class KeyScanner implements TemplateReader.Resolver {
+
+        final Set<String> keys = new TreeSet<String>();
+
+        public Object resolve(String key) {
+            keys.add(key);
+            return null;
+        }
+    }
+
+    /**
+     * The parsed properties of a filter file together with the hash of its content. The properties
+     * are shared by all render tasks using the filter and must not be modified.
+     */
+    private static final class Filter {
+
+        final Map<String, Object> properties;
+        final String contentHash;
+        final long size;
+
+        Filter(Map<String, Object> properties, String contentHash, long size) {
+            this.properties = properties;
+            this.contentHash = contentHash;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Creates the output file for one (template, filter) pair, unless it is up to date.
+     */
+    private class RenderTask implements Callable<RenderTask> {
+
+        private final Template template;
+        private final SourceTemplate source;
+        private final CompiledTemplate outputFileNameTemplate;
+        private final File outputDirectory;
+        private final File filterFile;
+        private final Filter filter;
+        private final long filterBytesRead;
+        private final Charset charset;
+        private final TemplateReport.TemplateEntry reportEntry;
+        private String sourceHash;
+        private String hash;
+        private long startTime;
+        private TemplateReader.Resolver resolver;
+        private CountingResolver countingResolver;
+        private OutputFile output;
+        File outputFile;
+        boolean upToDate;
+        boolean unchanged;
+        long duration;
+        long bytesWritten;
+        int lookupCount;
+        int unresolvedCount;
+        UnresolvedKeyCollector unresolvedKeys;
+        Exception failure;
+
+        RenderTask(Template template, SourceTemplate source, CompiledTemplate outputFileNameTemplate,
+                   File outputDirectory, File filterFile, Filter filter, long filterBytesRead, Charset charset,
+                   String sourceHash, TemplateReport.TemplateEntry reportEntry) {
+            this.template = template;
+            this.source = source;
+            this.outputFileNameTemplate = outputFileNameTemplate;
+            this.outputDirectory = outputDirectory;
+            this.filterFile = filterFile;
+            this.filter = filter;
+            this.filterBytesRead = filterBytesRead;
+            this.charset = charset;
+            this.sourceHash = sourceHash;
+            this.reportEntry = reportEntry;
+        }
+
+        public RenderTask call() throws MojoExecutionException {
+            prepare();
+            if (!upToDate) {
+                unchanged = !process(source, output, template.getLineEnding(), resolver, unresolvedKeys);
+            }
+            finish();
+            return this;
+        }
+
+        /**
+         * Determines the output file and whether it is up to date. An output file which is not up to date,
+         * or whose source hash is not known yet, is prepared for rendering.
+         */
+        void prepare() throws MojoExecutionException {
+            startTime = System.nanoTime();
+            Map<String, Object> builtInProperties = new HashMap<String, Object>();
+            String filterFileName = filterFile.getName();
+            builtInProperties.put("filter", filterFileName);
+            builtInProperties.put("filterBaseName", getBaseName(filterFileName));
+            builtInProperties.put("filterExtension", getExtension(filterFileName));
+            String sourceFileName = template.getSource().getName();
+            builtInProperties.put("source", sourceFileName);
+            builtInProperties.put("sourceBaseName", getBaseName(sourceFileName));
+            builtInProperties.put("sourceExtension", getExtension(sourceFileName));
+            resolver = new LayeredResolver(filter.properties, builtInProperties, projectProperties, systemProperties);
+            if (expandNested) {
+                resolver = new ExpandingResolver(resolver);
+            }
+            String outputFileName;
+            try {
+                outputFileName = outputFileNameTemplate.render(resolver);
+            } catch (ExpandingResolver.CyclicReferenceException e) {
+                throw new MojoExecutionException("Error creating output file name for filter " + filterFile + ": "
+                                                 + e.getMessage(), e);
+            }
+            outputFile = new File(outputDirectory, outputFileName);
+
+            if (sourceHash != null) {
+                hash = getHash();
+                upToDate = !force && state.isUpToDate(outputFile, hash);
+            }
+            if (!upToDate) {
+                output = new OutputFile(outputFile, charset, bufferSize);
+                unresolvedKeys = new UnresolvedKeyCollector(MAX_UNRESOLVED_KEYS);
+                if (report) {
+                    countingResolver = new CountingResolver(resolver);
+                    resolver = countingResolver;
+                }
+            }
+        }
+
+        /**
+         * Records the state of the output file once it has been rendered.
+         */
+        void finish() {
+            if (output != null) {
+                bytesWritten = unchanged ? 0 : output.getSize();
+            }
+            if (countingResolver != null) {
+                lookupCount = countingResolver.getResolvedCount() + countingResolver.getUnresolvedCount();
+                unresolvedCount = countingResolver.getUnresolvedCount();
+            }
+            if (hash == null) {
+                hash = getHash();
+            }
+            // outputs with unresolved keys must be checked again in the next build
+            if (failOnUnresolved && unresolvedKeys != null && unresolvedKeys.getCount() > 0) {
+                state.remove(outputFile);
+            } else {
+                state.put(outputFile, hash);
+            }
+            duration = System.nanoTime() - startTime;
+        }
+
+        private String getHash() {
+            return TemplateState.hash(sourceHash, filter.contentHash, projectPropertiesHash,
+                                      template.getLineEnding(), charset.name(), String.valueOf(expandNested),
+                                      String.valueOf(failOnUnresolved));
+        }
+    }
+
+    /**
+     * Creates the output files of a streamed source in one pass over the source, see {@link FanOutRenderer}.
+     * The tasks are prepared and finished as by {@link RenderTask#call()}, their failures are recorded in the
+     * tasks. If the hash of the source is not known yet, all output files are rendered, and the source is
+     * hashed and its keys are scanned in the same pass.
+     */
+    private class StreamRenderTask implements Callable<StreamRenderTask> {
+
+        private final SourceTemplate source;
+        private final List<RenderTask> tasks;
+
+        StreamRenderTask(SourceTemplate source, List<RenderTask> tasks) {
+            this.source = source;
+            this.tasks = tasks;
+        }
+
+        public StreamRenderTask call() throws MojoExecutionException {
+            FanOutRenderer renderer = new FanOutRenderer();
+            KeyScanner keyScanner = null;
+            if (source.contentHash == null) {
+                keyScanner = new KeyScanner();
+                renderer.addOutput(keyScanner, new DiscardingWriter(), null);
+            }
+            List<RenderTask> renderTasks = new ArrayList<RenderTask>();
+            List<Writer> writers = new ArrayList<Writer>();
+            List<FanOutRenderer.Output> outputs = new ArrayList<FanOutRenderer.Output>();
+            try {
+                for (RenderTask task : tasks) {
+                    try {
+                        task.prepare();
+                        if (!task.upToDate) {
+                            renderTasks.add(task);
+                            Writer writer = openWriter(task.output, task.template.getLineEnding());
+                            writers.add(writer);
+                            outputs.add(renderer.addOutput(task.resolver, writer, task.unresolvedKeys));
+                        }
+                    } catch (MojoExecutionException e) {
+                        task.failure = e;
+                    } catch (IOException e) {
+                        task.failure = createError(task.output, e);
+                    }
+                }
+                if (keyScanner != null || !outputs.isEmpty()) {
+                    String contentHash = render(renderer);
+                    if (keyScanner != null) {
+                        state.putSource(source.file, source.fingerprint, contentHash, keyScanner.keys);
+                        String sourceHash = getSourceHash(contentHash, keyScanner.keys);
+                        for (RenderTask task : tasks) {
+                            task.sourceHash = sourceHash;
+                        }
+                    }
+                }
+                for (int i = 0; i < renderTasks.size(); i++) {
+                    RenderTask task = renderTasks.get(i);
+                    if (task.failure != null) {
+                        continue;
+                    }
+                    Exception error = outputs.get(i).getError();
+                    try {
+                        if (error == null) {
+                            writers.get(i).close();
+                            task.unchanged = !task.output.commit();
+                        }
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                    if (error instanceof IOException) {
+                        task.failure = createError(task.output, (IOException) error);
+                    } else if (error instanceof ExpandingResolver.CyclicReferenceException) {
+                        task.failure = createError(task.output, (ExpandingResolver.CyclicReferenceException) error);
+                    } else {
+                        task.failure = error;
+                    }
+                }
+                for (RenderTask task : tasks) {
+                    if (task.failure == null) {
+                        task.finish();
+                    }
+                }
+            } finally {
+                for (RenderTask task : renderTasks) {
+                    task.output.discard();
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Reads the source once, rendering all outputs.
+         *
+         * @return the hash of the source content
+         */
+        private String render(FanOutRenderer renderer) throws MojoExecutionException {
+            DigestInputStream stream = null;
+            try {
+                stream = TemplateState.createHashingStream(openSource(source.file));
+                // malformed input is replaced, as by the decoder of a compiled source
+                renderer.render(new InputStreamReader(stream, source.charset));
+            } catch (IOException e) {
+                throw new MojoExecutionException("Error reading template " + source.file, e);
+            } finally {
+                if (stream != null) {
+                    close(stream);
+                }
+            }
+            tasks.get(0).reportEntry.addBytesRead(source.file.length());
+            return TemplateState.hash(stream);
+        }
     }
 }
@@ -3,13 +3,15 @@ package com.bc.maven.plugins;
 import java.io.FilterReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.nio.CharBuffer;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * A template reader replaces any occurences of <code>${<i>key</i>}</code> or <code>$<i>key</i></code>
  * in the underlying stream with the string representations of any non-null value returned by a given
- * resolver for that key.
+ * resolver for that key. The text of <code>${<i>...</i>}</code> may also be an {@link Expression}.
  *
  * @author Norman Fomferra
  */
@@ -17,9 +19,33 @@ public class TemplateReader extends FilterReader {
 
     private static final char DEFAULT_KEY_INDICATOR = '$';
     private static final int EOF = -1;
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Maximum length of a key reference including its key indicator and opening brace. Longer
+     * references are passed through raw without being buffered, as if their key did not resolve.
+     */
+    static final int MAX_KEY_LENGTH = 64 * 1024;
+    private static final int RAW_NONE = 0;
+    private static final int RAW_TO_BRACE = 1;
+    private static final int RAW_IDENTIFIER = 2;
     private Resolver resolver;
-    private IntBuffer buffer;
+    private PendingBuffer buffer;
+    private char[] inBuf;
+    private char[] scratchBuf;
+    private int inPos;
+    private int inLimit;
     private char keyIndicator = DEFAULT_KEY_INDICATOR;
+    private UnresolvedKeyListener unresolvedKeyListener;
+    private Map<String, Expression> expressions;
+    private int line = 1;
+    private long lineStart;
+    private int countedPos;
+    private long inBufOffset;
+    private boolean afterCR;
+    private boolean sharedBuffer;
+    private int rawState = RAW_NONE;
+    private int keyLine;
+    private int keyColumn;
 
     /**
      * Constructs a template reader for the given reader stream and a resolver given by a {@link java.util.Map}.
@@ -45,6 +71,50 @@ public class TemplateReader extends FilterReader {
         this.resolver = resolver;
     }
 
+    /**
+     * Constructs a template reader which scans the remaining characters of the given buffer. A buffer
+     * backed by an array is scanned in place, without copying. The buffer's position is not changed
+     * and its content must not be modified while it is read, several readers may scan the same buffer.
+     *
+     * @param text     the template text
+     * @param resolver the resolver
+     */
+    public TemplateReader(CharBuffer text, Resolver resolver) {
+        this(text.hasArray() ? new StringReader("") : new CharBufferReader(text.duplicate()), resolver);
+        if (text.hasArray()) {
+            sharedBuffer = true;
+            inBuf = text.array();
+            inPos = text.arrayOffset() + text.position();
+            inLimit = text.arrayOffset() + text.limit();
+            inBufOffset = -inPos;
+            countedPos = inPos;
+        }
+    }
+
+    /**
+     * Creates a template reader which does not synchronize on its lock. It avoids the monitor
+     * enter and exit on every read call, but must not be used by more than one thread at a time.
+     *
+     * @param in       the underlying reader
+     * @param resolver the resolver
+     * @return the unsynchronized template reader
+     */
+    public static TemplateReader createUnsynchronized(Reader in, Resolver resolver) {
+        return new UnsynchronizedTemplateReader(in, resolver);
+    }
+
+    /**
+     * Creates a template reader which scans the remaining characters of the given buffer and does not
+     * synchronize on its lock.
+     *
+     * @param text     the template text, see {@link #TemplateReader(CharBuffer, Resolver)}
+     * @param resolver the resolver
+     * @return the unsynchronized template reader
+     */
+    public static TemplateReader createUnsynchronized(CharBuffer text, Resolver resolver) {
+        return new UnsynchronizedTemplateReader(text, resolver);
+    }
+
     /**
      * Gets the key indicator.
      *
@@ -67,18 +137,31 @@ public class TemplateReader extends FilterReader {
     }
 
     /**
-     * Reads all content.
+     * Sets a listener which is notified about every key reference which the resolver cannot resolve,
+     * together with the line and column of its key indicator. Must be set before reading starts.
+     *
+     * @param unresolvedKeyListener the listener, may be null
+     */
+    public void setUnresolvedKeyListener(UnresolvedKeyListener unresolvedKeyListener) {
+        this.unresolvedKeyListener = unresolvedKeyListener;
+    }
+
+    /**
+     * Reads all content into memory. A convenience for small templates, large templates should
+     * be read through a buffer of fixed size instead.
+     *
      * @return the content
      * @throws java.io.IOException if an error occurs
      */
     public String readAll() throws IOException {
         StringBuilder sb = new StringBuilder(16 * 1024);
+        char[] cbuf = new char[BUFFER_SIZE];
         while (true) {
-            int i = read();
-            if (i == EOF) {
+            int n = read(cbuf, 0, cbuf.length);
+            if (n == EOF) {
                 break;
             }
-            sb.append((char) i);
+            sb.append(cbuf, 0, n);
         }
         return sb.toString();
     }
@@ -91,69 +174,7 @@ public class TemplateReader extends FilterReader {
     @Override
     public int read() throws IOException {
         synchronized (lock) {
-
-            if (buffer != null && buffer.ready()) {
-                return buffer.next();
-            }
-
-            int c = in.read();
-            if (c != keyIndicator) {
-                return c;
-            }
-
-            if (buffer == null) {
-                buffer = new IntBuffer();
-            }
-            buffer.reset();
-            buffer.append(keyIndicator);
-
-            c = readAndBuffer();
-            if (c != EOF) {
-                int keyType = 0;
-                if (c == '{') {  // ${key}?
-                    do {
-                        c = readAndBuffer();
-                        if (c == '}') {
-                            keyType = 1;
-                            break;
-                        }
-                    } while (c != EOF);
-                } else if (Character.isJavaIdentifierStart(c)) { // $key?
-                    keyType = 2;
-                    do {
-                        c = readAndBuffer();
-                        if (!(Character.isJavaIdentifierPart(c) || c == '.')) {
-                            break;
-                        }
-                    } while (c != EOF);
-                }
-
-                if (keyType != 0) {
-                    String key;
-                    if (keyType == 1) {  // ${key}
-                        key = buffer.substring(2, buffer.length() - 1);
-                    } else { // $key
-                        key = buffer.substring(1, buffer.length() - 1);
-                    }
-
-                    Object value = resolver.resolve(key);
-                    if (value != null) {
-                        String s = value.toString();
-                        int last;
-                        if (keyType == 1) { // ${key}
-                            last = in.read();
-                            buffer.reset();
-                            buffer.append(s);
-                        } else { // $key
-                            last = buffer.charAt(buffer.length() - 1);
-                            buffer.reset();
-                            buffer.append(s);
-                        }
-                        buffer.append(last); // last can also be EOF!
-                    }
-                }
-            }
-            return buffer.next();
+            return doRead();
         }
     }
 
@@ -180,15 +201,7 @@ public class TemplateReader extends FilterReader {
     @Override
     public int read(char cbuf[], int off, int len) throws IOException {
         synchronized (lock) {
-            int i;
-            for (i = 0; i < len; i++) {
-                int c = read();
-                if (c == EOF) {
-                    return i == 0 ? EOF : i;
-                }
-                cbuf[off + i] = (char) c;
-            }
-            return i;
+            return doRead(cbuf, off, len);
         }
     }
 
@@ -209,13 +222,7 @@ public class TemplateReader extends FilterReader {
     @Override
     public int read(CharBuffer target) throws IOException {
         synchronized (lock) {
-            int len = target.remaining();
-            char[] cbuf = new char[len];
-            int n = read(cbuf, 0, len);
-            if (n > 0) {
-                target.put(cbuf, 0, n);
-            }
-            return n;
+            return doRead(target);
         }
     }
 
@@ -227,17 +234,7 @@ public class TemplateReader extends FilterReader {
     @Override
     public long skip(long n) throws IOException {
         synchronized (lock) {
-            if (n < 0L) {
-                throw new IllegalArgumentException("skip value is negative");
-            }
-            long i;
-            for (i = 0; i < n; i++) {
-                int c = read();
-                if (c == EOF) {
-                    break;
-                }
-            }
-            return i;
+            return doSkip(n);
         }
     }
 
@@ -248,7 +245,9 @@ public class TemplateReader extends FilterReader {
      */
     @Override
     public boolean ready() throws IOException {
-        return buffer.ready();
+        synchronized (lock) {
+            return doReady();
+        }
     }
 
     /**
@@ -288,16 +287,292 @@ public class TemplateReader extends FilterReader {
     public void close() throws IOException {
         super.close();
         buffer = null;
+        inBuf = null;
+        scratchBuf = null;
     }
 
     /////////////////////////////////////////////////////////////////////////////
 
+    private int doRead() throws IOException {
+        if (buffer != null && buffer.ready()) {
+            return buffer.next();
+        }
+
+        int c = readChar();
+        if (rawState != RAW_NONE) {
+            rawState = nextRawState(c);
+            return c;
+        }
+        if (c != keyIndicator) {
+            return c;
+        }
+
+        parseKey();
+        return buffer.next();
+    }
+
+    /**
+     * Reads characters into a portion of an array. Literal runs between key indicators are
+     * copied in bulk, only key references are parsed character by character.
+     */
+    private int doRead(char cbuf[], int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > cbuf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int n = 0;
+        while (n < len) {
+            if (buffer != null && buffer.ready()) {
+                if (buffer.atEOF()) {
+                    buffer.next();
+                    return n == 0 ? EOF : n;
+                }
+                n += buffer.next(cbuf, off + n, len - n);
+                continue;
+            }
+
+            if (inPos == inLimit && !fill()) {
+                rawState = RAW_NONE;
+                return n == 0 ? EOF : n;
+            }
+
+            int start = inPos;
+            int end = Math.min(inLimit, inPos + len - n);
+            if (rawState != RAW_NONE) {
+                while (inPos < end && rawState != RAW_NONE) {
+                    rawState = nextRawState(inBuf[inPos++]);
+                }
+                System.arraycopy(inBuf, start, cbuf, off + n, inPos - start);
+                n += inPos - start;
+                continue;
+            }
+            while (inPos < end && inBuf[inPos] != keyIndicator) {
+                inPos++;
+            }
+            int runLength = inPos - start;
+            System.arraycopy(inBuf, start, cbuf, off + n, runLength);
+            n += runLength;
+
+            if (inPos < end) {
+                inPos++;
+                parseKey();
+            }
+        }
+        return n;
+    }
+
+    private int doRead(CharBuffer target) throws IOException {
+        int len = target.remaining();
+        if (target.hasArray()) {
+            int n = doRead(target.array(), target.arrayOffset() + target.position(), len);
+            if (n > 0) {
+                target.position(target.position() + n);
+            }
+            return n;
+        }
+        char[] cbuf = getScratchBuffer();
+        int n = doRead(cbuf, 0, Math.min(len, cbuf.length));
+        if (n > 0) {
+            target.put(cbuf, 0, n);
+        }
+        return n;
+    }
+
+    private long doSkip(long n) throws IOException {
+        if (n < 0L) {
+            throw new IllegalArgumentException("skip value is negative");
+        }
+        char[] cbuf = getScratchBuffer();
+        long remaining = n;
+        while (remaining > 0) {
+            int count = doRead(cbuf, 0, (int) Math.min(remaining, cbuf.length));
+            if (count == EOF) {
+                break;
+            }
+            remaining -= count;
+        }
+        return n - remaining;
+    }
+
+    private boolean doReady() throws IOException {
+        return (buffer != null && buffer.ready()) || inPos < inLimit || in.ready();
+    }
+
+    private char[] getScratchBuffer() {
+        if (scratchBuf == null) {
+            scratchBuf = new char[BUFFER_SIZE];
+        }
+        return scratchBuf;
+    }
+
+    /**
+     * Parses a key reference after the key indicator has been consumed. The parsed characters
+     * are left in the buffer, either raw or replaced by the resolved value.
+     */
+    private void parseKey() throws IOException {
+        if (buffer == null) {
+            buffer = new PendingBuffer();
+        }
+        buffer.reset();
+        buffer.append(keyIndicator);
+        if (unresolvedKeyListener != null) {
+            locateKey(inPos - 1);
+        }
+
+        int c = readAndBuffer();
+        if (c != EOF) {
+            int keyType = 0;
+            if (c == '{') {  // ${key}?
+                do {
+                    c = readAndBuffer();
+                    if (c == '}') {
+                        keyType = 1;
+                        break;
+                    }
+                    if (c != EOF && buffer.length() > MAX_KEY_LENGTH) {
+                        rawState = RAW_TO_BRACE;
+                        return;
+                    }
+                } while (c != EOF);
+            } else if (Character.isJavaIdentifierStart(c)) { // $key?
+                keyType = 2;
+                do {
+                    c = readAndBuffer();
+                    if (!(Character.isJavaIdentifierPart(c) || c == '.')) {
+                        break;
+                    }
+                    if (buffer.length() > MAX_KEY_LENGTH) {
+                        rawState = RAW_IDENTIFIER;
+                        return;
+                    }
+                } while (c != EOF);
+            }
+
+            if (keyType != 0) {
+                String key;
+                if (keyType == 1) {  // ${key}
+                    key = buffer.substring(2, buffer.length() - 1);
+                } else { // $key
+                    key = buffer.substring(1, buffer.length() - 1);
+                }
+
+                Object value;
+                if (keyType == 1 && Expression.isExpression(key)) {
+                    value = getExpression(key).evaluate(resolver);
+                } else {
+                    value = resolver.resolve(key);
+                }
+                if (value != null) {
+                    String s = value.toString();
+                    int last;
+                    if (keyType == 1) { // ${key}
+                        last = readChar();
+                    } else { // $key
+                        last = buffer.charAt(buffer.length() - 1);
+                    }
+                    buffer.reset(s);
+                    buffer.append(last); // last can also be EOF!
+                } else if (unresolvedKeyListener != null) {
+                    unresolvedKeyListener.keyUnresolved(key, keyLine, keyColumn);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the state after a character of an overlong key reference has been passed through raw.
+     * Such a reference ends with its closing brace, or with the character terminating its identifier,
+     * which is passed through unscanned like after any unresolved <code>$<i>key</i></code>.
+     */
+    private int nextRawState(int c) {
+        if (c == EOF) {
+            return RAW_NONE;
+        }
+        if (rawState == RAW_TO_BRACE) {
+            return c == '}' ? RAW_NONE : RAW_TO_BRACE;
+        }
+        return Character.isJavaIdentifierPart(c) || c == '.' ? RAW_IDENTIFIER : RAW_NONE;
+    }
+
+    private Expression getExpression(String text) {
+        if (expressions == null) {
+            expressions = new HashMap<String, Expression>();
+        }
+        Expression expression = expressions.get(text);
+        if (expression == null) {
+            expression = Expression.parse(text);
+            expressions.put(text, expression);
+        }
+        return expression;
+    }
+
     private int readAndBuffer() throws IOException {
-        int c = in.read();
+        int c = readChar();
         buffer.append(c);
         return c;
     }
 
+    private int readChar() throws IOException {
+        if (inPos == inLimit && !fill()) {
+            return EOF;
+        }
+        return inBuf[inPos++];
+    }
+
+    /**
+     * Computes the line and column of the key indicator at the given position in the input buffer.
+     * Lines are counted incrementally, only while a listener is set.
+     */
+    private void locateKey(int pos) {
+        countLines(pos);
+        keyLine = line;
+        keyColumn = (int) (inBufOffset + pos - lineStart + 1);
+    }
+
+    /**
+     * Counts the line breaks in the input buffer up to the given position. LF, CR/LF and a single CR
+     * count as one line break each.
+     */
+    private void countLines(int end) {
+        for (int i = countedPos; i < end; i++) {
+            char c = inBuf[i];
+            if (c == '\n') {
+                if (!afterCR) {
+                    line++;
+                }
+                lineStart = inBufOffset + i + 1;
+                afterCR = false;
+            } else if (c == '\r') {
+                line++;
+                lineStart = inBufOffset + i + 1;
+                afterCR = true;
+            } else {
+                afterCR = false;
+            }
+        }
+        countedPos = end;
+    }
+
+    private boolean fill() throws IOException {
+        if (sharedBuffer) {
+            // the input buffer is the array of the template text, it must not be overwritten
+            return false;
+        }
+        if (inBuf == null) {
+            inBuf = new char[BUFFER_SIZE];
+        } else if (unresolvedKeyListener != null) {
+            countLines(inLimit);
+            inBufOffset += inLimit;
+            countedPos = 0;
+        }
+        int n;
+        do {
+            n = in.read(inBuf, 0, inBuf.length);
+        } while (n == 0);
+        inPos = 0;
+        inLimit = n == EOF ? 0 : n;
+        return n != EOF;
+    }
+
     /////////////////////////////////////////////////////////////////////////////
 
     public static interface Resolver {
@@ -306,7 +581,23 @@ public class TemplateReader extends FilterReader {
     }
 
 
-    private static class KeyValueResolver implements Resolver {
+    /**
+     * Receives the key references which could not be resolved.
+     */
+    public static interface UnresolvedKeyListener {
+
+        /**
+         * Called for a key reference which could not be resolved.
+         *
+         * @param key    the key
+         * @param line   the line of the key indicator, starting at 1
+         * @param column the column of the key indicator, starting at 1
+         */
+        void keyUnresolved(String key, int line, int column);
+    }
+
+
+    static class KeyValueResolver implements Resolver {
 
         private Map map;
 
@@ -324,71 +615,184 @@ public class TemplateReader extends FilterReader {
 
 
     /**
-     * A buffer to which EOF can also be appended.
+     * A template reader which skips all locking.
      */
-    private static class IntBuffer {
+    private static class UnsynchronizedTemplateReader extends TemplateReader {
 
-        private final static int INC = 8192;
-        private int[] buffer;
+        public UnsynchronizedTemplateReader(Reader in, Resolver resolver) {
+            super(in, resolver);
+        }
+
+        public UnsynchronizedTemplateReader(CharBuffer text, Resolver resolver) {
+            super(text, resolver);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return super.doRead();
+        }
+
+        @Override
+        public int read(char cbuf[], int off, int len) throws IOException {
+            return super.doRead(cbuf, off, len);
+        }
+
+        @Override
+        public int read(CharBuffer target) throws IOException {
+            return super.doRead(target);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return super.doSkip(n);
+        }
+
+        @Override
+        public boolean ready() throws IOException {
+            return super.doReady();
+        }
+    }
+
+
+    /**
+     * A reader over the remaining characters of a buffer which is not backed by an array.
+     */
+    private static class CharBufferReader extends Reader {
+
+        private final CharBuffer text;
+
+        public CharBufferReader(CharBuffer text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (!text.hasRemaining()) {
+                return EOF;
+            }
+            int n = Math.min(len, text.remaining());
+            text.get(cbuf, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+
+    /**
+     * A buffer of pending characters: an optional resolved value, which is served directly from its
+     * string, followed by buffered characters and an optional EOF marker.
+     */
+    private static class PendingBuffer {
+
+        private final static int INITIAL_CAPACITY = 256;
+        private char[] chars;
         private int length;
         private int index;
+        private boolean eof;
+        private String value;
+        private int valueIndex;
 
-        public IntBuffer() {
-            this.buffer = new int[INC];
+        public PendingBuffer() {
+            this.chars = new char[INITIAL_CAPACITY];
         }
 
         public void reset() {
             length = 0;
             index = 0;
+            eof = false;
+            value = null;
+            valueIndex = 0;
+        }
+
+        /**
+         * Resets this buffer and lets it serve the given value first.
+         */
+        public void reset(String value) {
+            reset();
+            this.value = value;
         }
 
         public int next() {
-            if (!ready()) {
-                throw new IllegalStateException("!ready()");
+            if (value != null && valueIndex < value.length()) {
+                return value.charAt(valueIndex++);
+            }
+            if (index < length) {
+                return chars[index++];
+            }
+            if (eof) {
+                eof = false;
+                return EOF;
+            }
+            throw new IllegalStateException("!ready()");
+        }
+
+        /**
+         * Copies pending characters up to (but excluding) an EOF marker.
+         *
+         * @return the number of characters copied
+         */
+        public int next(char[] cbuf, int off, int len) {
+            int n = 0;
+            if (value != null) {
+                n = Math.min(len, value.length() - valueIndex);
+                value.getChars(valueIndex, valueIndex + n, cbuf, off);
+                valueIndex += n;
             }
-            return buffer[index++];
+            int m = Math.min(len - n, length - index);
+            System.arraycopy(chars, index, cbuf, off + n, m);
+            index += m;
+            return n + m;
+        }
+
+        public boolean atEOF() {
+            return eof && index == length && (value == null || valueIndex == value.length());
         }
 
+        /**
+         * @return the buffered character at the given position, or EOF
+         */
         public int charAt(int pos) {
             if (pos < 0) {
                 throw new IndexOutOfBoundsException("pos < 0");
             }
-            if (pos >= length) {
+            if (pos >= length()) {
                 throw new IndexOutOfBoundsException("pos >= length");
             }
-            return buffer[pos];
+            return pos < length ? chars[pos] : EOF;
         }
 
+        /**
+         * Appends a character or EOF. Nothing must be appended after EOF.
+         */
         public void append(int c) {
-            if (length >= buffer.length) {
-                int[] newBuffer = new int[buffer.length + INC];
-                System.arraycopy(buffer, 0, newBuffer, 0, length);
-                buffer = newBuffer;
+            if (c == EOF) {
+                eof = true;
+                return;
             }
-            buffer[length++] = c;
-        }
-
-        public void append(String s) {
-            for (int i = 0; i < s.length(); i++) {
-                append((int) s.charAt(i));
+            if (length == chars.length) {
+                char[] newChars = new char[2 * chars.length];
+                System.arraycopy(chars, 0, newChars, 0, length);
+                chars = newChars;
             }
+            chars[length++] = (char) c;
         }
 
         public boolean ready() {
-            return index < length;
+            return (value != null && valueIndex < value.length()) || index < length || eof;
         }
 
         public String substring(int start, int end) {
-            int n = end - start;
-            char[] cbuf = new char[n];
-            for (int i = start; i < end; i++) {
-                cbuf[i - start] = (char) buffer[i];
-            }
-            return new String(cbuf);
+            return new String(chars, start, end - start);
         }
 
+        /**
+         * @return the number of buffered characters, including an EOF marker
+         */
         public int length() {
-            return length;
+            return eof ? length + 1 : length;
         }
     }
 }
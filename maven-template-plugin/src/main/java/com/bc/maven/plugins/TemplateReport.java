@@ -0,0 +1,263 @@
+package com.bc.maven.plugins;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Timings and counters of a template goal execution. The report is filled by the thread which
+ * collects the render results, it is not thread-safe.
+ */
+public class TemplateReport {
+
+    private static final String ROW_FORMAT = "%-40s %-10s %10s %12s %12s %8s %10s";
+
+    private final List<TemplateEntry> templates = new ArrayList<TemplateEntry>();
+    private final long startTime = System.nanoTime();
+    private long duration;
+
+    /**
+     * Adds an entry for a template source.
+     *
+     * @param source the template source
+     * @return the entry, to which the template's outputs are added
+     */
+    public TemplateEntry addTemplate(File source) {
+        TemplateEntry entry = new TemplateEntry(source);
+        templates.add(entry);
+        return entry;
+    }
+
+    /**
+     * Marks the end of the execution.
+     */
+    public void finish() {
+        duration = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Logs the report as a table, one row per template and output file.
+     *
+     * @param log the log
+     */
+    public void log(Log log) {
+        log.info(String.format(ROW_FORMAT, "Template / filter", "Status", "Time [ms]", "Read [B]", "Written [B]",
+                               "Lookups", "Unresolved"));
+        Totals totals = new Totals();
+        for (TemplateEntry template : templates) {
+            log.info(String.format(ROW_FORMAT, template.source.getName(), template.cacheHit ? "cached" : "read",
+                                   millis(template.duration), template.bytesRead, "", "", ""));
+            for (OutputEntry output : template.outputs) {
+                log.info(String.format(ROW_FORMAT, "  " + output.filter.getName(), output.status,
+                                       millis(output.duration), output.bytesRead, output.bytesWritten,
+                                       output.lookupCount, output.unresolvedCount));
+            }
+            totals.add(template);
+        }
+        log.info(String.format(ROW_FORMAT, "Total", "", millis(duration), totals.bytesRead, totals.bytesWritten,
+                               totals.lookupCount, totals.unresolvedCount));
+        log.info(String.format("%d output(s): %d written, %d unchanged, %d up to date; %d of %d template(s) cached",
+                               totals.outputCount, totals.writtenCount, totals.unchangedCount,
+                               totals.upToDateCount, totals.cacheHitCount, templates.size()));
+    }
+
+    /**
+     * Writes the report as JSON document.
+     *
+     * @param file the report file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    void write(Writer writer) throws IOException {
+        Totals totals = new Totals();
+        for (TemplateEntry template : templates) {
+            totals.add(template);
+        }
+        writer.write("{\n");
+        writer.write("  \"durationMillis\": " + millis(duration) + ",\n");
+        writer.write("  \"outputCount\": " + totals.outputCount + ",\n");
+        writer.write("  \"writtenCount\": " + totals.writtenCount + ",\n");
+        writer.write("  \"unchangedCount\": " + totals.unchangedCount + ",\n");
+        writer.write("  \"upToDateCount\": " + totals.upToDateCount + ",\n");
+        writer.write("  \"cacheHitCount\": " + totals.cacheHitCount + ",\n");
+        writer.write("  \"bytesRead\": " + totals.bytesRead + ",\n");
+        writer.write("  \"bytesWritten\": " + totals.bytesWritten + ",\n");
+        writer.write("  \"lookupCount\": " + totals.lookupCount + ",\n");
+        writer.write("  \"unresolvedCount\": " + totals.unresolvedCount + ",\n");
+        writer.write("  \"templates\": [");
+        for (int i = 0; i < templates.size(); i++) {
+            TemplateEntry template = templates.get(i);
+            writer.write(i > 0 ? ",\n" : "\n");
+            writer.write("    {\n");
+            writer.write("      \"source\": " + quote(template.source.getPath()) + ",\n");
+            writer.write("      \"cacheHit\": " + template.cacheHit + ",\n");
+            writer.write("      \"bytesRead\": " + template.bytesRead + ",\n");
+            writer.write("      \"durationMillis\": " + millis(template.duration) + ",\n");
+            writer.write("      \"outputs\": [");
+            for (int j = 0; j < template.outputs.size(); j++) {
+                OutputEntry output = template.outputs.get(j);
+                writer.write(j > 0 ? ",\n" : "\n");
+                writer.write("        {");
+                writer.write("\"filter\": " + quote(output.filter.getPath()));
+                writer.write(", \"output\": " + quote(output.output.getPath()));
+                writer.write(", \"status\": " + quote(output.status));
+                writer.write(", \"durationMillis\": " + millis(output.duration));
+                writer.write(", \"bytesRead\": " + output.bytesRead);
+                writer.write(", \"bytesWritten\": " + output.bytesWritten);
+                writer.write(", \"lookupCount\": " + output.lookupCount);
+                writer.write(", \"unresolvedCount\": " + output.unresolvedCount);
+                writer.write("}");
+            }
+            writer.write(template.outputs.isEmpty() ? "]\n" : "\n      ]\n");
+            writer.write("    }");
+        }
+        writer.write(templates.isEmpty() ? "]\n" : "\n  ]\n");
+        writer.write("}\n");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1.0e6);
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * The timings and counters of a template source.
+     */
+    public static class TemplateEntry {
+
+        final File source;
+        final List<OutputEntry> outputs = new ArrayList<OutputEntry>();
+        boolean cacheHit;
+        long bytesRead;
+        long duration;
+
+        TemplateEntry(File source) {
+            this.source = source;
+        }
+
+        /**
+         * Records how the template source has been prepared for rendering.
+         *
+         * @param cacheHit  true, if the compiled template has been taken from the cache
+         * @param bytesRead the number of bytes read from the template source
+         * @param duration  the preparation time in nanoseconds
+         */
+        public void setPrepared(boolean cacheHit, long bytesRead, long duration) {
+            this.cacheHit = cacheHit;
+            this.bytesRead = bytesRead;
+            this.duration = duration;
+        }
+
+        /**
+         * Records a pass over a streamed template source, which is read while its output files are rendered.
+         *
+         * @param bytesRead the number of bytes read from the template source
+         */
+        public synchronized void addBytesRead(long bytesRead) {
+            this.bytesRead += bytesRead;
+        }
+
+        /**
+         * Adds an output file of this template.
+         *
+         * @param filter           the filter file
+         * @param output           the output file
+         * @param status           "written", "unchanged" or "up to date"
+         * @param duration         the time taken for the output file in nanoseconds
+         * @param bytesRead        the number of bytes read from the filter file
+         * @param bytesWritten     the number of bytes written to the output file
+         * @param lookupCount      the number of keys looked up, including keys with a default value
+         * @param unresolvedCount  the number of keys looked up without a value
+         */
+        public void addOutput(File filter, File output, String status, long duration, long bytesRead,
+                              long bytesWritten, int lookupCount, int unresolvedCount) {
+            OutputEntry entry = new OutputEntry();
+            entry.filter = filter;
+            entry.output = output;
+            entry.status = status;
+            entry.duration = duration;
+            entry.bytesRead = bytesRead;
+            entry.bytesWritten = bytesWritten;
+            entry.lookupCount = lookupCount;
+            entry.unresolvedCount = unresolvedCount;
+            outputs.add(entry);
+        }
+    }
+
+    private static class OutputEntry {
+
+        File filter;
+        File output;
+        String status;
+        long duration;
+        long bytesRead;
+        long bytesWritten;
+        int lookupCount;
+        int unresolvedCount;
+    }
+
+    private static class Totals {
+
+        int outputCount;
+        int writtenCount;
+        int unchangedCount;
+        int upToDateCount;
+        int cacheHitCount;
+        long bytesRead;
+        long bytesWritten;
+        long lookupCount;
+        long unresolvedCount;
+
+        void add(TemplateEntry template) {
+            if (template.cacheHit) {
+                cacheHitCount++;
+            }
+            bytesRead += template.bytesRead;
+            for (OutputEntry output : template.outputs) {
+                outputCount++;
+                if ("written".equals(output.status)) {
+                    writtenCount++;
+                } else if ("unchanged".equals(output.status)) {
+                    unchangedCount++;
+                } else {
+                    upToDateCount++;
+                }
+                bytesRead += output.bytesRead;
+                bytesWritten += output.bytesWritten;
+                lookupCount += output.lookupCount;
+                unresolvedCount += output.unresolvedCount;
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.bc.maven.plugins;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Records a content hash of the inputs from which each output file has been created, so that
+ * outputs whose inputs have not changed need not be created again. The content hash and keys of
+ * template sources which are too large to be read before rendering can be recorded as well.
+ */
+public class TemplateState {
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String SOURCE_PREFIX = "source:";
+
+    private final File file;
+    private final Properties previousHashes;
+    private final Properties currentHashes;
+
+    private TemplateState(File file, Properties previousHashes) {
+        this.file = file;
+        this.previousHashes = previousHashes;
+        this.currentHashes = new Properties();
+        this.currentHashes.putAll(previousHashes);
+    }
+
+    /**
+     * Loads the state from the given file. A missing or unreadable file results in an empty state.
+     *
+     * @param file the state file
+     * @return the state
+     */
+    public static TemplateState load(File file) {
+        Properties hashes = new Properties();
+        if (file.exists()) {
+            InputStream stream = null;
+            try {
+                stream = new FileInputStream(file);
+                hashes.load(stream);
+            } catch (IOException e) {
+                hashes.clear();
+            } finally {
+                close(stream);
+            }
+        }
+        return new TemplateState(file, hashes);
+    }
+
+    /**
+     * Tests whether the given output file exists and has been created from inputs with the given hash.
+     *
+     * @param outputFile the output file
+     * @param hash       the hash of the inputs of the output file
+     * @return true, if the output file is up to date
+     */
+    public boolean isUpToDate(File outputFile, String hash) {
+        return hash.equals(previousHashes.getProperty(outputFile.getAbsolutePath())) && outputFile.exists();
+    }
+
+    /**
+     * Records the hash of the inputs of the given output file.
+     *
+     * @param outputFile the output file
+     * @param hash       the hash of the inputs of the output file
+     */
+    public synchronized void put(File outputFile, String hash) {
+        currentHashes.setProperty(outputFile.getAbsolutePath(), hash);
+    }
+
+    /**
+     * Forgets the hash of the inputs of the given output file, so that it is not up to date in the next build.
+     *
+     * @param outputFile the output file
+     */
+    public synchronized void remove(File outputFile) {
+        currentHashes.remove(outputFile.getAbsolutePath());
+    }
+
+    /**
+     * Gets the content hash and keys recorded for the given template source.
+     *
+     * @param source      the template source
+     * @param fingerprint the fingerprint of the current version of the source, e.g. its size and modification time
+     * @return the record, or null if none has been recorded for a source with the given fingerprint
+     */
+    public SourceRecord getSource(File source, String fingerprint) {
+        String value = previousHashes.getProperty(SOURCE_PREFIX + source.getAbsolutePath());
+        if (value == null) {
+            return null;
+        }
+        // length-prefixed parts: fingerprint, content hash and keys
+        Set<String> keys = new TreeSet<String>();
+        String recordedFingerprint = null;
+        String contentHash = null;
+        int pos = 0;
+        try {
+            while (pos < value.length()) {
+                int colon = value.indexOf(':', pos);
+                int end = colon + 1 + Integer.parseInt(value.substring(pos, colon));
+                String part = value.substring(colon + 1, end);
+                if (recordedFingerprint == null) {
+                    recordedFingerprint = part;
+                } else if (contentHash == null) {
+                    contentHash = part;
+                } else {
+                    keys.add(part);
+                }
+                pos = end;
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (contentHash == null || !fingerprint.equals(recordedFingerprint)) {
+            return null;
+        }
+        return new SourceRecord(contentHash, Collections.unmodifiableSet(keys));
+    }
+
+    /**
+     * Records the content hash and keys of the given template source.
+     *
+     * @param source      the template source
+     * @param fingerprint the fingerprint of the version of the source which has been read
+     * @param contentHash the content hash
+     * @param keys        the keys referenced by the source
+     */
+    public synchronized void putSource(File source, String fingerprint, String contentHash, Set<String> keys) {
+        StringBuilder sb = new StringBuilder();
+        appendPart(sb, fingerprint);
+        appendPart(sb, contentHash);
+        for (String key : keys) {
+            appendPart(sb, key);
+        }
+        currentHashes.setProperty(SOURCE_PREFIX + source.getAbsolutePath(), sb.toString());
+    }
+
+    private static void appendPart(StringBuilder sb, String part) {
+        sb.append(part.length()).append(':').append(part);
+    }
+
+    /**
+     * Saves the recorded hashes.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void save() throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            currentHashes.store(stream, "maven-template-plugin state, do not edit");
+        } finally {
+            close(stream);
+        }
+    }
+
+    /**
+     * Computes the hash of the content of the given file.
+     *
+     * @param file the file
+     * @return the hash as hex string
+     * @throws IOException if an I/O error occurs
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        InputStream stream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            close(stream);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the hash of the given bytes. The result equals the hash of a file with the same content.
+     *
+     * @param bytes the bytes
+     * @return the hash as hex string
+     */
+    public static String hash(byte[] bytes) {
+        MessageDigest digest = createDigest();
+        digest.update(bytes);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a stream which hashes the bytes read through it. The hash of all bytes read equals the hash of a
+     * file with the same content.
+     *
+     * @param stream the stream to read from
+     * @return the hashing stream, see {@link #hash(DigestInputStream)}
+     */
+    public static DigestInputStream createHashingStream(InputStream stream) {
+        return new DigestInputStream(stream, createDigest());
+    }
+
+    /**
+     * Computes the hash of the bytes read through the given stream.
+     *
+     * @param stream a stream created by {@link #createHashingStream(InputStream)}
+     * @return the hash as hex string
+     */
+    public static String hash(DigestInputStream stream) {
+        return toHex(stream.getMessageDigest().digest());
+    }
+
+    /**
+     * Computes the hash of the given map, independent of its iteration order.
+     *
+     * @param map the map
+     * @return the hash as hex string
+     */
+    public static String hash(Map<?, ?> map) {
+        TreeMap<String, String> sortedMap = new TreeMap<String, String>();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            sortedMap.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+        return hash(sortedMap.toString());
+    }
+
+    /**
+     * Computes the hash of the given strings.
+     *
+     * @param parts the strings, may contain null
+     * @return the hash as hex string
+     */
+    public static String hash(String... parts) {
+        MessageDigest digest = createDigest();
+        try {
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes("UTF-8"));
+                digest.update((byte) 0);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * The content hash and keys recorded for a template source.
+     */
+    public static class SourceRecord {
+
+        private final String contentHash;
+        private final Set<String> keys;
+
+        SourceRecord(String contentHash, Set<String> keys) {
+            this.contentHash = contentHash;
+            this.keys = keys;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public Set<String> getKeys() {
+            return keys;
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.bc.maven.plugins;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates output files from a set of {@link Template templates} like the <code>template</code> goal,
+ * then watches the template sources and filter directories and creates the output files affected by
+ * a change again. Runs until the build is interrupted.
+ *
+ * @goal watch
+ * @requiresDirectInvocation true
+ */
+public class TemplateWatchMojo extends TemplateMojo {
+
+    /**
+     * Time in milliseconds without further changes, after which changed files are processed.
+     *
+     * @parameter expression="${template.debounce}" default-value="100"
+     */
+    private long debounce;
+
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<WatchKey, Path>();
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        checkConfig();
+        if (debounce < 0) {
+            throw new MojoExecutionException("<debounce> must not be negative");
+        }
+        generateSafely(getTemplates());
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            try {
+                for (Template template : getTemplates()) {
+                    register(template.getSource().getAbsoluteFile().getParentFile().toPath().normalize(), false);
+                    register(getFilterDir(template), true);
+                }
+                getLog().info("Watching " + watchedDirs.size() + " director(ies) for changes, press Ctrl+C to stop");
+                watch();
+            } finally {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error watching templates: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watch() throws IOException, InterruptedException {
+        while (true) {
+            Set<Path> changedPaths = new LinkedHashSet<Path>();
+            boolean overflow = poll(watchService.take(), changedPaths);
+            WatchKey key;
+            while ((key = watchService.poll(debounce, TimeUnit.MILLISECONDS)) != null) {
+                overflow |= poll(key, changedPaths);
+            }
+            if (watchedDirs.isEmpty()) {
+                getLog().warn("No directories left to watch");
+                return;
+            }
+
+            List<Template> affectedTemplates = new ArrayList<Template>();
+            for (Template template : getTemplates()) {
+                if (overflow || isAffected(template, changedPaths)) {
+                    affectedTemplates.add(template);
+                }
+            }
+            if (!affectedTemplates.isEmpty()) {
+                getLog().info("Changed: " + changedPaths);
+                List<File> changedFiles = new ArrayList<File>();
+                for (Path path : changedPaths) {
+                    changedFiles.add(path.toFile());
+                }
+                invalidate(changedFiles);
+                long startTime = System.nanoTime();
+                generateSafely(affectedTemplates.toArray(new Template[affectedTemplates.size()]));
+                getLog().info(String.format("Processed %d template(s) in %d ms", affectedTemplates.size(),
+                                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
+            }
+        }
+    }
+
+    /**
+     * Collects the changed paths of the given key and registers new subdirectories of filter directories.
+     *
+     * @return true, if events have been lost
+     */
+    private boolean poll(WatchKey key, Set<Path> changedPaths) throws IOException {
+        Path dir = watchedDirs.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (isTempFile(path)) {
+                continue;
+            }
+            changedPaths.add(path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)
+                && isInFilterDir(path)) {
+                register(path, true);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+        return overflow;
+    }
+
+    private void register(Path dir, boolean recursive) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        if (!recursive) {
+            watchedDirs.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                         StandardWatchEventKinds.ENTRY_MODIFY,
+                                         StandardWatchEventKinds.ENTRY_DELETE), dir);
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) throws IOException {
+                register(subDir, false);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void generateSafely(Template[] templates) {
+        try {
+            generate(templates);
+        } catch (MojoExecutionException e) {
+            getLog().error(e.getMessage());
+        }
+    }
+
+    private boolean isAffected(Template template, Set<Path> changedPaths) {
+        Path source = template.getSource().getAbsoluteFile().toPath().normalize();
+        Path filterDir = getFilterDir(template);
+        for (Path path : changedPaths) {
+            if (path.equals(source) || path.startsWith(filterDir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isInFilterDir(Path path) {
+        for (Template template : getTemplates()) {
+            if (path.startsWith(getFilterDir(template))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path getFilterDir(Template template) {
+        return new File(template.getFilterSet().getDirectory()).getAbsoluteFile().toPath().normalize();
+    }
+
+    /**
+     * Output files are written to temporary files first, see {@link OutputFile}.
+     */
+    private static boolean isTempFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(".") && name.endsWith(".tmp");
+    }
+}
@@ -0,0 +1,87 @@
+package com.bc.maven.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the key references which could not be resolved while rendering a template. At most a given number
+ * of references is kept, further ones are only counted, so that a large template with many unresolved
+ * references does not need memory in proportion to its size.
+ * <p/>
+ * Instances are not thread-safe.
+ */
+public class UnresolvedKeyCollector implements TemplateReader.UnresolvedKeyListener {
+
+    private final List<UnresolvedKey> unresolvedKeys = new ArrayList<UnresolvedKey>();
+    private final int maxKeys;
+    private long count;
+
+    /**
+     * Creates a collector which keeps all unresolved key references.
+     */
+    public UnresolvedKeyCollector() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxKeys the maximum number of unresolved key references kept
+     */
+    public UnresolvedKeyCollector(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public void keyUnresolved(String key, int line, int column) {
+        count++;
+        if (unresolvedKeys.size() < maxKeys) {
+            unresolvedKeys.add(new UnresolvedKey(key, line, column));
+        }
+    }
+
+    /**
+     * @return the first unresolved key references, in the order they occurred
+     */
+    public List<UnresolvedKey> getUnresolvedKeys() {
+        return Collections.unmodifiableList(unresolvedKeys);
+    }
+
+    /**
+     * @return the number of all unresolved key references, including the ones which have not been kept
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * A key reference which could not be resolved.
+     */
+    public static class UnresolvedKey {
+
+        private final String key;
+        private final int line;
+        private final int column;
+
+        public UnresolvedKey(String key, int line, int column) {
+            this.key = key;
+            this.line = line;
+            this.column = column;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        @Override
+        public String toString() {
+            return line + ":" + column + ": " + key;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Properties;
+
+
+public class CompiledTemplateTest extends TestCase {
+
+    public void testLiteralsAndKeys() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("id", "com.bc.x");
+
+        test(properties, "", "");
+        test(properties, "<module/>", "<module/>");
+        test(properties, "<id>$id</id>", "<id>com.bc.x</id>");
+        test(properties, "<id>${id}</id>", "<id>com.bc.x</id>");
+        test(properties, "<v>${version}</v>", "<v>${version}</v>");
+        test(properties, "$id", "com.bc.x");
+        test(properties, "${id}", "com.bc.x");
+    }
+
+    public void testNotReplaceable() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("bar", "foo");
+
+        test(properties, "${bar, blah, blah", "${bar, blah, blah");
+        test(properties, "blah, blah ${bar", "blah, blah ${bar");
+        test(properties, "blah, blah $-bar", "blah, blah $-bar");
+        test(properties, "blah, blah $", "blah, blah $");
+    }
+
+    public void testCharAfterKeyIsNotScanned() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("a", "A");
+        properties.setProperty("b", "B");
+
+        test(properties, "$a;$b", "A;B");
+        test(properties, "${a}$b", "A$b");
+        test(properties, "${a}${b}", "A${b}");
+        test(properties, "${x}$b", "${x}B");
+        test(properties, "${x}${a}${b}", "${x}A${b}");
+        test(properties, "${a}$", "A$");
+    }
+
+    public void testRenderAgainstSeveralResolvers() throws IOException {
+        CompiledTemplate compiledTemplate = CompiledTemplate.compile(new StringReader("${a}$b:${c}"));
+
+        Properties properties = new Properties();
+        assertEquals("${a}$b:${c}", compiledTemplate.render(properties));
+        properties.setProperty("a", "1");
+        assertEquals("1$b:${c}", compiledTemplate.render(properties));
+        properties.setProperty("c", "3");
+        assertEquals("1$b:3", compiledTemplate.render(properties));
+        properties.remove("a");
+        properties.setProperty("b", "2");
+        assertEquals("${a}2:3", compiledTemplate.render(properties));
+    }
+
+    public void testOtherKeyIndicator() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("filterBaseName", "x");
+        properties.setProperty("sourceExtension", "xml");
+
+        test(properties, "@{filterBaseName}.@{sourceExtension}", "x.xml", '@');
+        test(properties, "@{filterBaseName}@{sourceExtension}", "x@{sourceExtension}", '@');
+    }
+
+    public void testExpressions() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("name", " beam ");
+        properties.setProperty("file", "beam-core.jar");
+        properties.setProperty("empty", "");
+
+        test(properties, "${name|trim|upper}!", "BEAM!");
+        test(properties, "${name|trim|capitalize}", "Beam");
+        test(properties, "${file|baseName}-sources.${file|extension}", "beam-core-sources.jar");
+        test(properties, "${missing:-none}/${empty:-none}/${name:-none}", "none/none/ beam ");
+        test(properties, "${missing|upper:-a:-b|c}", "a:-b|c");
+        test(properties, "${missing|upper}", "${missing|upper}");
+        test(properties, "${name|unknown}", "${name|unknown}");
+        test(properties, "${missing:-x}$name", "x$name");
+        test(properties, "${file|baseName}${name}", "beam-core${name}");
+
+        // only text starting with a valid key is an expression, other text containing ":-" or '|' is a plain key
+        properties.setProperty("at 12:-30", "c");
+        properties.setProperty("a b|upper", "d");
+        test(properties, "${at 12:-30}/${a b|upper}/${:-x}", "c/d/${:-x}");
+        test(properties, "${project.build-dir:-target}", "target");
+
+        CompiledTemplate compiledTemplate = CompiledTemplate.compile("${a|upper}${b:-c}$d", '$');
+        assertEquals("[a, b, d]", compiledTemplate.getKeys().toString());
+    }
+
+    public void testUnresolvedKeys() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("a", "A");
+        String input = "$a ${b}\r\n  $c\r${a} ${d}\n\n${e}$f";
+
+        UnresolvedKeyCollector readerKeys = new UnresolvedKeyCollector();
+        TemplateReader templateReader = new TemplateReader(new StringReader(input), properties);
+        templateReader.setUnresolvedKeyListener(readerKeys);
+        templateReader.readAll();
+
+        UnresolvedKeyCollector bufferKeys = new UnresolvedKeyCollector();
+        CharBuffer text = CharBuffer.wrap(("x\n" + input).toCharArray(), 2, input.length());
+        templateReader = new TemplateReader(text, new TemplateReader.KeyValueResolver(properties));
+        templateReader.setUnresolvedKeyListener(bufferKeys);
+        templateReader.readAll();
+
+        UnresolvedKeyCollector compiledKeys = new UnresolvedKeyCollector();
+        CompiledTemplate.compile(input, '$').render(new TemplateReader.KeyValueResolver(properties),
+                                                    new StringWriter(), compiledKeys);
+
+        String expected = "[1:4: b, 2:3: c, 3:6: d, 5:1: e, 5:5: f]";
+        assertEquals(expected, readerKeys.getUnresolvedKeys().toString());
+        assertEquals(expected, bufferKeys.getUnresolvedKeys().toString());
+        assertEquals(expected, compiledKeys.getUnresolvedKeys().toString());
+    }
+
+    private static void test(Properties properties, String input, String expectedOutput) throws IOException {
+        test(properties, input, expectedOutput, '$');
+    }
+
+    private static void test(Properties properties, String input, String expectedOutput, char keyIndicator) throws
+                                                                                                          IOException {
+        TemplateReader templateReader = new TemplateReader(new StringReader(input), properties);
+        templateReader.setKeyIndicator(keyIndicator);
+        assertEquals(expectedOutput, templateReader.readAll());
+
+        CompiledTemplate compiledTemplate = CompiledTemplate.compile(new StringReader(input), keyIndicator);
+        assertEquals(expectedOutput, compiledTemplate.render(properties));
+    }
+}
@@ -0,0 +1,64 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+public class ExpandingResolverTest extends TestCase {
+
+    public void testNestedExpansion() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("version", "1.0");
+        map.put("name", "beam-${version}");
+        map.put("jar", "${name}.jar");
+        map.put("text", "$name uses ${unknown}");
+
+        ExpandingResolver resolver = new ExpandingResolver(new TemplateReader.KeyValueResolver(map));
+        assertEquals("1.0", resolver.resolve("version"));
+        assertEquals("beam-1.0", resolver.resolve("name"));
+        assertEquals("beam-1.0.jar", resolver.resolve("jar"));
+        assertEquals("beam-1.0 uses ${unknown}", resolver.resolve("text"));
+        assertNull(resolver.resolve("unknown"));
+    }
+
+    public void testEachKeyIsExpandedOnce() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("a", "x");
+        map.put("b", "${a}${a}");
+        map.put("c", "${b}-${b}");
+        final Map<String, Integer> lookupCounts = new HashMap<String, Integer>();
+        final TemplateReader.Resolver countingResolver = new TemplateReader.KeyValueResolver(map) {
+            @Override
+            public Object resolve(String key) {
+                Integer count = lookupCounts.get(key);
+                lookupCounts.put(key, count != null ? count + 1 : 1);
+                return super.resolve(key);
+            }
+        };
+
+        ExpandingResolver resolver = new ExpandingResolver(countingResolver);
+        assertEquals("x${a}-x${a}", resolver.resolve("c"));
+        assertEquals("x${a}-x${a}", resolver.resolve("c"));
+        assertEquals(Integer.valueOf(1), lookupCounts.get("a"));
+        assertEquals(Integer.valueOf(1), lookupCounts.get("b"));
+        assertEquals(Integer.valueOf(1), lookupCounts.get("c"));
+    }
+
+    public void testCyclicReference() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("a", "${b}");
+        map.put("b", "x-${c}");
+        map.put("c", "$a");
+        map.put("d", "${a}");
+
+        ExpandingResolver resolver = new ExpandingResolver(new TemplateReader.KeyValueResolver(map));
+        try {
+            resolver.resolve("d");
+            fail("CyclicReferenceException expected");
+        } catch (ExpandingResolver.CyclicReferenceException e) {
+            assertEquals("Cyclic property reference: a -> b -> c -> a", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+
+public class FanOutRendererTest extends TestCase {
+
+    public void testOutputsEqualTemplateReaderOutput() throws IOException {
+        test("");
+        test("<module/>");
+        test("<id>$a</id> <id>${a}</id> <v>${b}</v> $a.b;");
+        test("${a, blah, blah");
+        test("blah, blah $-a $$a $");
+        test("${a}$b ${a}${b} ${x}$b ${a}${b}${ab}$a ${a}$");
+        test("${a}${b}${a}${b}$a ${b}${a}{b}x");
+        test("${a:-x}$b ${a|upper}${b} ${a.b:-${b}}$");
+    }
+
+    public void testRandomTexts() throws IOException {
+        Random random = new Random(5);
+        char[] alphabet = "$${}ab.x \n\r".toCharArray();
+        for (int i = 0; i < 2000; i++) {
+            char[] text = new char[random.nextInt(40)];
+            for (int j = 0; j < text.length; j++) {
+                text[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            test(new String(text));
+        }
+    }
+
+    public void testKeysAcrossWindowBoundaries() throws IOException {
+        char[] filler = new char[TemplateReader.MAX_KEY_LENGTH - 3];
+        Arrays.fill(filler, 'k');
+        String longKey = new String(filler);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            sb.append("${a}${b}$a\n");
+            sb.append("${").append(longKey, 0, i * 7).append("}");
+            sb.append("${").append(longKey).append("xyz}");
+            sb.append("$").append(longKey).append(longKey, 0, i).append(" ");
+            sb.append(longKey, 0, i * 1000).append("${a}$");
+        }
+        sb.append("${").append(longKey);
+        test(sb.toString());
+    }
+
+    public void testUnresolvedKeys() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("a", "A");
+        String input = "$a ${b}\r\n  $c\r${a} ${d}\n\n${e}$f";
+
+        FanOutRenderer renderer = new FanOutRenderer();
+        UnresolvedKeyCollector keys = new UnresolvedKeyCollector();
+        UnresolvedKeyCollector otherKeys = new UnresolvedKeyCollector();
+        renderer.addOutput(new TemplateReader.KeyValueResolver(properties), new StringWriter(), keys);
+        renderer.addOutput(new TemplateReader.KeyValueResolver(new Properties()), new StringWriter(), otherKeys);
+        renderer.render(new StringReader(input));
+
+        assertEquals("[1:4: b, 2:3: c, 3:6: d, 5:1: e, 5:5: f]", keys.getUnresolvedKeys().toString());
+        assertEquals("[1:1: a, 1:4: b, 2:3: c, 3:1: a, 3:6: d, 5:1: e, 5:5: f]",
+                     otherKeys.getUnresolvedKeys().toString());
+    }
+
+    public void testFailedOutputDoesNotAffectOthers() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("a", "A");
+        final IOException error = new IOException("disk full");
+        Writer failingWriter = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw error;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        FanOutRenderer renderer = new FanOutRenderer();
+        FanOutRenderer.Output failingOutput = renderer.addOutput(new TemplateReader.KeyValueResolver(properties),
+                                                                 failingWriter, null);
+        StringWriter writer = new StringWriter();
+        FanOutRenderer.Output output = renderer.addOutput(new TemplateReader.KeyValueResolver(properties), writer,
+                                                          null);
+        renderer.render(new StringReader("x $a y $a z"));
+
+        assertEquals("x A y A z", writer.toString());
+        assertSame(error, failingOutput.getError());
+        assertNull(output.getError());
+    }
+
+    /**
+     * Renders the input against several resolvers at once and compares each output with the output of a
+     * {@link TemplateReader}.
+     */
+    private static void test(String input) throws IOException {
+        Properties[] propertiesArray = new Properties[]{
+                createProperties(), createProperties("a"), createProperties("b"), createProperties("a", "b"),
+                createProperties("a", "b", "ab", "a.b")
+        };
+        FanOutRenderer renderer = new FanOutRenderer();
+        StringWriter[] writers = new StringWriter[propertiesArray.length];
+        UnresolvedKeyCollector[] unresolvedKeys = new UnresolvedKeyCollector[propertiesArray.length];
+        for (int i = 0; i < propertiesArray.length; i++) {
+            writers[i] = new StringWriter();
+            unresolvedKeys[i] = new UnresolvedKeyCollector();
+            renderer.addOutput(new TemplateReader.KeyValueResolver(propertiesArray[i]), writers[i],
+                               unresolvedKeys[i]);
+        }
+        renderer.render(new StringReader(input));
+
+        for (int i = 0; i < propertiesArray.length; i++) {
+            TemplateReader templateReader = new TemplateReader(new StringReader(input), propertiesArray[i]);
+            UnresolvedKeyCollector readerKeys = new UnresolvedKeyCollector();
+            templateReader.setUnresolvedKeyListener(readerKeys);
+            String expected = templateReader.readAll();
+            String message = "input " + (input.length() < 100 ? input : input.length() + " chars") + ", keys "
+                             + propertiesArray[i].keySet();
+            assertEquals(message, expected, writers[i].toString());
+            assertEquals(message, readerKeys.getUnresolvedKeys().toString(),
+                         unresolvedKeys[i].getUnresolvedKeys().toString());
+        }
+    }
+
+    private static Properties createProperties(String... keys) {
+        Properties properties = new Properties();
+        for (String key : keys) {
+            properties.setProperty(key, key.toUpperCase());
+        }
+        return properties;
+    }
+}
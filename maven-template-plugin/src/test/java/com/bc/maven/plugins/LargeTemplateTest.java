@@ -0,0 +1,101 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.bc.maven.plugins.TestUtils.set;
+import static com.bc.maven.plugins.TestUtils.write;
+
+/**
+ * Renders a template source which is several times larger than the heap through the stream path of
+ * {@link TemplateMojo}. Run by a dedicated Surefire execution with a small heap, see the POM.
+ */
+public class LargeTemplateTest extends TestCase {
+
+    private static final int KEY_LENGTH = 1024 * 1024;
+    private static final String LINE = "<id>${id}</id>$x\n";
+    private static final String RENDERED_LINE = "<id>0123</id>$x\n";
+    private static final int LINE_COUNT = 16 * 1000 * 1000;
+
+    private File baseDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("large-template-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtils.delete(baseDir);
+    }
+
+    public void testLargeTemplateIsStreamed() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        writeSource(source);
+        File filterDir = new File(baseDir, "filters");
+        write(new File(filterDir, "f.properties"), "id=0123\n");
+        File outputDir = new File(baseDir, "out");
+
+        TemplateMojo mojo = TemplateMojoTest.initMojo(new TemplateMojo(), outputDir,
+                                                      TemplateMojoTest.createTemplate(source, filterDir, "f.txt"));
+        set(mojo, "streamThreshold", 1L);
+        mojo.execute();
+
+        // the overlong key extends to the first '}', so the first ${id} is passed through
+        File output = new File(outputDir, "f.txt");
+        assertEquals(2 + KEY_LENGTH + 1 + (long) LINE_COUNT * RENDERED_LINE.length(), output.length());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(output), "UTF-8"));
+        try {
+            assertEquals(2 + KEY_LENGTH + LINE.length() - 1, reader.readLine().length());
+            assertEquals(RENDERED_LINE, reader.readLine() + "\n");
+        } finally {
+            reader.close();
+        }
+        // only the first unresolved references of $x are kept
+        List<String> messages = ((RecordingLog) mojo.getLog()).getMessages("debug");
+        assertTrue(messages.contains(output + ": " + NumberFormat.getInstance().format(LINE_COUNT - 1000)
+                                     + " more unresolved key reference(s) not listed"));
+
+        // the second run compares the output with the rendered text without holding either in memory
+        mojo.setLog(new RecordingLog());
+        set(mojo, "force", true);
+        mojo.execute();
+        assertTrue(((RecordingLog) mojo.getLog()).getMessages("debug").contains("Skipped " + output + " (unchanged)"));
+    }
+
+    /**
+     * Writes <code>${</code>, followed by an unterminated key and the lines.
+     */
+    private static void writeSource(File source) throws Exception {
+        char[] key = new char[8192];
+        Arrays.fill(key, 'k');
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(LINE);
+        }
+        String lines = sb.toString();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+        try {
+            writer.write("${");
+            for (int i = 0; i < KEY_LENGTH / key.length; i++) {
+                writer.write(key);
+            }
+            for (int i = 0; i < LINE_COUNT / 1000; i++) {
+                writer.write(lines);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
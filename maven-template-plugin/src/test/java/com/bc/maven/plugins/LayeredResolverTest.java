@@ -0,0 +1,55 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+public class LayeredResolverTest extends TestCase {
+
+    public void testFirstLayerWithValueWins() {
+        Map<String, Object> filter = createLayer("filter", "all");
+        Map<String, Object> builtIns = createLayer("builtIns", "all", "builtIns");
+        Map<String, Object> project = createLayer("project", "all", "builtIns", "project");
+        Map<String, Object> system = createLayer("system", "all", "builtIns", "project", "system");
+        filter.put("null", null);
+        builtIns.put("null", "builtIns");
+
+        LayeredResolver resolver = new LayeredResolver(filter, builtIns, project, system);
+        assertEquals("filter", resolver.resolve("all"));
+        assertEquals("builtIns", resolver.resolve("builtIns"));
+        assertEquals("project", resolver.resolve("project"));
+        assertEquals("system", resolver.resolve("system"));
+        assertEquals("builtIns", resolver.resolve("null"));
+        assertNull(resolver.resolve("unknown"));
+
+        LayeredResolver listResolver = new LayeredResolver(Arrays.<Map>asList(system, project, builtIns, filter));
+        assertEquals("system", listResolver.resolve("all"));
+    }
+
+    public void testSnapshot() {
+        Properties defaults = new Properties();
+        defaults.setProperty("default", "d");
+        Properties properties = new Properties(defaults);
+        properties.setProperty("key", "value");
+
+        Map<String, Object> snapshot = LayeredResolver.snapshot(properties);
+        properties.setProperty("key", "changed");
+        assertEquals("value", snapshot.get("key"));
+        assertFalse(snapshot.containsKey("default"));
+        assertEquals(1, snapshot.size());
+    }
+
+    /**
+     * @return a map of the given keys to the name of the layer
+     */
+    private static Map<String, Object> createLayer(String name, String... keys) {
+        Map<String, Object> layer = new HashMap<String, Object>();
+        for (String key : keys) {
+            layer.put(key, name);
+        }
+        return layer;
+    }
+}
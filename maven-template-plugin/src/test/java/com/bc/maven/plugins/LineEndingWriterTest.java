@@ -0,0 +1,46 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+
+public class LineEndingWriterTest extends TestCase {
+
+    public void testUnix() throws IOException {
+        test("\n", "", "");
+        test("\n", "a\nb\r\nc\rd", "a\nb\nc\rd");
+        test("\n", "\r\n\r\n", "\n\n");
+        test("\n", "\r\r\n", "\r\n");
+        test("\n", "a\r", "a\r");
+    }
+
+    public void testDos() throws IOException {
+        test("\r\n", "a\nb\r\nc\rd", "a\r\nb\r\nc\rd");
+        test("\r\n", "\n\n", "\r\n\r\n");
+        test("\r\n", "\r\r\n", "\r\r\n");
+        test("\r\n", "a\r", "a\r");
+    }
+
+    private static void test(String lineSeparator, String input, String expectedOutput) throws IOException {
+        // write input in all possible splits, so that CR/LF pairs are split across calls
+        for (int i = 0; i <= input.length(); i++) {
+            StringWriter stringWriter = new StringWriter();
+            LineEndingWriter writer = new LineEndingWriter(stringWriter, lineSeparator);
+            writer.write(input.substring(0, i));
+            writer.flush();
+            writer.write(input.substring(i).toCharArray());
+            writer.close();
+            assertEquals(expectedOutput, stringWriter.toString());
+        }
+
+        StringWriter stringWriter = new StringWriter();
+        LineEndingWriter writer = new LineEndingWriter(stringWriter, lineSeparator);
+        for (int i = 0; i < input.length(); i++) {
+            writer.write(input.charAt(i));
+        }
+        writer.close();
+        assertEquals(expectedOutput, stringWriter.toString());
+    }
+}
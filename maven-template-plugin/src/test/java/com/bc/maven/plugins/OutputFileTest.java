@@ -0,0 +1,86 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static com.bc.maven.plugins.TestUtils.read;
+import static com.bc.maven.plugins.TestUtils.write;
+
+public class OutputFileTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("output-file-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtils.delete(dir);
+    }
+
+    public void testNewFileIsWritten() throws Exception {
+        File file = new File(dir, "out.txt");
+        assertTrue(commit(file, "abc"));
+        assertEquals("abc", read(file));
+    }
+
+    public void testIdenticalContentIsNotWritten() throws Exception {
+        File file = new File(dir, "out.txt");
+        String text = createText(200 * 1024, 'x');
+        write(file, text);
+        assertTrue(file.setLastModified(0));
+        assertFalse(commit(file, text));
+        assertEquals(0, file.lastModified());
+        assertEquals(Arrays.asList("out.txt"), Arrays.asList(dir.list()));
+    }
+
+    public void testContentOfSameSizeIsCompared() throws Exception {
+        File file = new File(dir, "out.txt");
+        write(file, "abc");
+        assertTrue(commit(file, "abd"));
+        assertEquals("abd", read(file));
+
+        // differs only behind the first compared block
+        String text = createText(200 * 1024, 'x');
+        write(file, text);
+        String changedText = createText(200 * 1024, 'y');
+        assertTrue(commit(file, changedText));
+        assertEquals(changedText, read(file));
+    }
+
+    public void testContentOfOtherSizeIsWritten() throws Exception {
+        File file = new File(dir, "out.txt");
+        write(file, "abc");
+        assertTrue(commit(file, "abcd"));
+        assertEquals("abcd", read(file));
+    }
+
+    /**
+     * @return a text of the given length, ending with the given character
+     */
+    private static String createText(int length, char last) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'a');
+        chars[length - 1] = last;
+        return new String(chars);
+    }
+
+    private static boolean commit(File file, String text) throws Exception {
+        OutputFile output = new OutputFile(file, Charset.forName("UTF-8"), 1024);
+        try {
+            Writer writer = output.openWriter();
+            writer.write(text);
+            writer.close();
+            return output.commit();
+        } finally {
+            output.discard();
+        }
+    }
+}
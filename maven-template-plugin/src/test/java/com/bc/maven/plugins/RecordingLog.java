@@ -0,0 +1,105 @@
+package com.bc.maven.plugins;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A log which records its messages, prefixed by their level, e.g. "[debug] Created x.txt".
+ * Debug messages are enabled.
+ */
+class RecordingLog implements Log {
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * @return the recorded messages of the given level, without prefix
+     */
+    List<String> getMessages(String level) {
+        List<String> result = new ArrayList<String>();
+        String prefix = "[" + level + "] ";
+        synchronized (messages) {
+            for (String message : messages) {
+                if (message.startsWith(prefix)) {
+                    result.add(message.substring(prefix.length()));
+                }
+            }
+        }
+        return result;
+    }
+
+    void clear() {
+        messages.clear();
+    }
+
+    private void add(String level, CharSequence content, Throwable error) {
+        String message = "[" + level + "] " + (content != null ? content : "");
+        messages.add(error != null ? message + " " + error : message);
+    }
+
+    public boolean isDebugEnabled() {
+        return true;
+    }
+
+    public void debug(CharSequence content) {
+        add("debug", content, null);
+    }
+
+    public void debug(CharSequence content, Throwable error) {
+        add("debug", content, error);
+    }
+
+    public void debug(Throwable error) {
+        add("debug", null, error);
+    }
+
+    public boolean isInfoEnabled() {
+        return true;
+    }
+
+    public void info(CharSequence content) {
+        add("info", content, null);
+    }
+
+    public void info(CharSequence content, Throwable error) {
+        add("info", content, error);
+    }
+
+    public void info(Throwable error) {
+        add("info", null, error);
+    }
+
+    public boolean isWarnEnabled() {
+        return true;
+    }
+
+    public void warn(CharSequence content) {
+        add("warn", content, null);
+    }
+
+    public void warn(CharSequence content, Throwable error) {
+        add("warn", content, error);
+    }
+
+    public void warn(Throwable error) {
+        add("warn", null, error);
+    }
+
+    public boolean isErrorEnabled() {
+        return true;
+    }
+
+    public void error(CharSequence content) {
+        add("error", content, null);
+    }
+
+    public void error(CharSequence content, Throwable error) {
+        add("error", content, error);
+    }
+
+    public void error(Throwable error) {
+        add("error", null, error);
+    }
+}
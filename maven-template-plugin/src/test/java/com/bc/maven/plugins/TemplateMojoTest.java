@@ -0,0 +1,484 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+import org.apache.maven.model.FileSet;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.bc.maven.plugins.TestUtils.read;
+import static com.bc.maven.plugins.TestUtils.set;
+import static com.bc.maven.plugins.TestUtils.write;
+
+public class TemplateMojoTest extends TestCase {
+
+    private static final int FILTER_COUNT = 20;
+
+    private File baseDir;
+    private File filterDir;
+    private File outputDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("template-mojo-test").toFile();
+        filterDir = new File(baseDir, "filters");
+        outputDir = new File(baseDir, "out");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtils.delete(baseDir);
+    }
+
+    public void testOutputsAreRenderedInParallel() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "name=${name}, filter=${filter}\n");
+        for (int i = 0; i < FILTER_COUNT; i++) {
+            write(new File(filterDir, "f" + i + ".properties"), "name=n" + i + "\n");
+        }
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        set(mojo, "force", true);
+        RecordingLog log = new RecordingLog();
+        mojo.setLog(log);
+        set(mojo, "threads", 1);
+        mojo.execute();
+        List<String> sequentialOrder = getLoggedOutputs(log);
+
+        log.clear();
+        TestUtils.delete(outputDir);
+        set(mojo, "threads", 8);
+        mojo.execute();
+        // results are logged in task order, whatever the order in which the tasks finish
+        assertEquals(sequentialOrder, getLoggedOutputs(log));
+        assertEquals(FILTER_COUNT, sequentialOrder.size());
+
+        for (int i = 0; i < FILTER_COUNT; i++) {
+            assertEquals("name=n" + i + ", filter=f" + i + ".properties\n", read(new File(outputDir, "f" + i + ".txt")));
+        }
+    }
+
+    public void testFirstFailureInTaskOrderIsReported() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name}\n");
+        for (int i = 0; i < FILTER_COUNT; i++) {
+            // every fifth filter contains a cyclic reference
+            write(new File(filterDir, "f" + i + ".properties"), i % 5 == 3 ? "name=${name}\n" : "name=n" + i + "\n");
+        }
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        set(mojo, "expandNested", true);
+        set(mojo, "force", true);
+        set(mojo, "threads", 1);
+        String expectedMessage = getFailure(mojo).getMessage();
+        assertTrue(expectedMessage, expectedMessage.contains("Error creating file"));
+
+        set(mojo, "threads", 8);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expectedMessage, getFailure(mojo).getMessage());
+        }
+    }
+
+    public void testKeysAreLookedUpInFilterBuiltInProjectAndSystemProperties() throws Exception {
+        // system properties are shared with the JVM, so the keys are qualified
+        String prefix = getClass().getName() + ".";
+        File source = new File(baseDir, "template.txt");
+        write(source, "${" + prefix + "a} ${filter} ${" + prefix + "b} ${" + prefix + "c}\n");
+        write(new File(filterDir, "f.properties"), prefix + "a=filter\n");
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        MavenProject project = new MavenProject(new Model());
+        project.getProperties().setProperty(prefix + "a", "project");
+        project.getProperties().setProperty("filter", "project");
+        project.getProperties().setProperty(prefix + "b", "project");
+        set(mojo, "project", project);
+        System.setProperty(prefix + "a", "system");
+        System.setProperty(prefix + "b", "system");
+        System.setProperty(prefix + "c", "system only");
+        try {
+            mojo.execute();
+        } finally {
+            System.clearProperty(prefix + "a");
+            System.clearProperty(prefix + "b");
+            System.clearProperty(prefix + "c");
+        }
+        assertEquals("filter f.properties project system only\n", read(new File(outputDir, "f.txt")));
+    }
+
+    public void testUnresolvedKeyReferencesAreCounted() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${a} ${a}\n$b\n");
+        write(new File(filterDir, "f.properties"), "b=1\n");
+        write(new File(filterDir, "g.properties"), "c=2\n");
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        set(mojo, "failOnUnresolved", true);
+        assertEquals("5 unresolved key reference(s) at 3 location(s)", getFailure(mojo).getMessage());
+        List<String> errors = ((RecordingLog) mojo.getLog()).getMessages("error");
+        // the filters are listed in the order in which they have been found
+        assertEquals(3, errors.size());
+        assertTrue(errors.get(0), errors.get(0).startsWith(source.getPath() + ":1:1: a (filters: "));
+        assertTrue(errors.get(1), errors.get(1).startsWith(source.getPath() + ":1:6: a (filters: "));
+        assertEquals(source.getPath() + ":2:1: b (filters: g.properties)", errors.get(2));
+    }
+
+    public void testTemplateEncodingOverridesDefaultEncoding() throws Exception {
+        File latin1Source = new File(baseDir, "latin1.txt");
+        write(latin1Source, "\u00e4 ${name}\n", "ISO-8859-1");
+        File utf8Source = new File(baseDir, "utf8.txt");
+        write(utf8Source, "\u00e4 ${name}\n", "UTF-8");
+        // property files are always read as ISO-8859-1
+        write(new File(filterDir, "f.properties"), "name=\\u00fc\n");
+
+        Template latin1Template = createTemplate(latin1Source, "@{sourceBaseName}.txt");
+        set(latin1Template, "encoding", "ISO-8859-1");
+        createMojo(latin1Template, createTemplate(utf8Source, "@{sourceBaseName}.txt")).execute();
+
+        assertTrue(Arrays.equals(new byte[]{(byte) 0xe4, ' ', (byte) 0xfc, '\n'},
+                                 Files.readAllBytes(new File(outputDir, "latin1.txt").toPath())));
+        assertEquals("\u00e4 \u00fc\n", read(new File(outputDir, "utf8.txt"), "UTF-8"));
+    }
+
+    public void testPlatformEncodingIsOnlyReportedWhenUsed() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name}\n");
+        write(new File(filterDir, "f.properties"), "name=value\n");
+
+        Template template = createTemplate(source, "@{filterBaseName}.txt");
+        set(template, "encoding", "UTF-8");
+        TemplateMojo mojo = createMojo(template);
+        set(mojo, "encoding", null);
+        RecordingLog log = (RecordingLog) mojo.getLog();
+        mojo.execute();
+        assertEquals(Collections.<String>emptyList(), log.getMessages("warn"));
+
+        set(template, "encoding", null);
+        mojo.execute();
+        assertEquals(1, log.getMessages("warn").size());
+        assertTrue(log.getMessages("warn").get(0).startsWith("Using platform encoding"));
+    }
+
+    public void testOutputIsReplacedAtomically() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name}\n");
+        File filter = new File(filterDir, "f.properties");
+        write(filter, "name=new\n");
+        File output = new File(outputDir, "f.txt");
+        write(output, "old\n");
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        mojo.execute();
+        assertEquals("new\n", read(output));
+        assertEquals(Arrays.asList("f.txt", "template-plugin.state"), getSortedNames(outputDir));
+
+        // a failed output leaves the previous output file and no temporary file behind
+        write(filter, "name=${name}\n");
+        set(mojo, "expandNested", true);
+        getFailure(mojo);
+        assertEquals("new\n", read(output));
+        assertEquals(Arrays.asList("f.txt", "template-plugin.state"), getSortedNames(outputDir));
+    }
+
+    public void testUnchangedOutputIsNotRewritten() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name}\n");
+        write(new File(filterDir, "f.properties"), "name=value\n");
+        File output = new File(outputDir, "f.txt");
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        set(mojo, "force", true);
+        mojo.execute();
+        assertTrue(output.setLastModified(0));
+
+        RecordingLog log = new RecordingLog();
+        mojo.setLog(log);
+        mojo.execute();
+        assertEquals(0, output.lastModified());
+        assertTrue(log.getMessages("debug").contains("Skipped " + output + " (unchanged)"));
+    }
+
+    public void testUpToDateOutputIsSkipped() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name} ${version}\r\n");
+        File filter = new File(filterDir, "f.properties");
+        write(filter, "name=\\u00e4\n");
+        File output = new File(outputDir, "f.txt");
+
+        Template template = createTemplate(source, "@{filterBaseName}.txt");
+        TemplateMojo mojo = createMojo(template);
+        MavenProject project = new MavenProject(new Model());
+        project.getProperties().setProperty("version", "1");
+        set(mojo, "project", project);
+        assertEquals("Created " + output, execute(mojo, output));
+        assertTrue(output.setLastModified(0));
+
+        assertEquals("Skipped " + output + " (up to date)", execute(mojo, output));
+        assertEquals(0, output.lastModified());
+
+        // each input of the output alone causes it to be rendered again
+        write(source, "[${name} ${version}]\r\n");
+        assertTrue(source.setLastModified(source.lastModified() + 2000));
+        assertEquals("Created " + output, execute(mojo, output));
+        assertEquals("[\u00e4 1]\r\n", read(output, "UTF-8"));
+
+        write(filter, "name=\\u00f6\n");
+        assertTrue(filter.setLastModified(filter.lastModified() + 2000));
+        assertEquals("Created " + output, execute(mojo, output));
+        assertEquals("[\u00f6 1]\r\n", read(output, "UTF-8"));
+
+        project.getProperties().setProperty("version", "2");
+        assertEquals("Created " + output, execute(mojo, output));
+        assertEquals("[\u00f6 2]\r\n", read(output, "UTF-8"));
+
+        set(template, "lineEnding", "unix");
+        assertEquals("Created " + output, execute(mojo, output));
+        assertEquals("[\u00f6 2]\n", read(output, "UTF-8"));
+
+        set(mojo, "encoding", "ISO-8859-1");
+        assertEquals("Created " + output, execute(mojo, output));
+        assertEquals("[\u00f6 2]\n", read(output, "ISO-8859-1"));
+
+        assertEquals("Skipped " + output + " (up to date)", execute(mojo, output));
+        set(mojo, "force", true);
+        assertEquals("Skipped " + output + " (unchanged)", execute(mojo, output));
+    }
+
+    public void testSourceIsReadOnceForAllFilters() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name} of ${filter}\n");
+        for (int i = 0; i < 5; i++) {
+            write(new File(filterDir, "f" + i + ".properties"), "name=n" + i + "\n");
+        }
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        set(mojo, "report", true);
+        mojo.execute();
+        String report = read(new File(outputDir, "template-report.json"));
+        assertTrue(report, report.contains("\"cacheHit\": false,\n      \"bytesRead\": " + source.length() + ","));
+        assertOutputs(5);
+
+        // decoded sources are hashed while being decoded
+        TestUtils.delete(outputDir);
+        set(mojo, "decodeThreshold", 1L);
+        mojo.execute();
+        assertOutputs(5);
+    }
+
+    public void testStreamedSourceIsReadOnceForAllFilters() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name} of ${filter}\n");
+        for (int i = 0; i < 5; i++) {
+            write(new File(filterDir, "f" + i + ".properties"), "name=n" + i + "\n");
+        }
+        final List<CountingInputStream> streams = new ArrayList<CountingInputStream>();
+        TemplateMojo mojo = initMojo(new TemplateMojo() {
+            @Override
+            InputStream openSource(File source) throws IOException {
+                CountingInputStream stream = new CountingInputStream(super.openSource(source));
+                streams.add(stream);
+                return stream;
+            }
+        }, outputDir, createTemplate(source, "@{filterBaseName}.txt"));
+        set(mojo, "streamThreshold", 1L);
+
+        // the source is hashed and scanned in the same pass in which all outputs are rendered
+        mojo.execute();
+        assertOutputs(5);
+        assertEquals(1, streams.size());
+        assertEquals(source.length(), streams.get(0).count);
+
+        // the recorded hash of the unmodified source shows that all outputs are up to date
+        streams.clear();
+        mojo.execute();
+        assertEquals(0, streams.size());
+
+        set(mojo, "force", true);
+        mojo.execute();
+        assertOutputs(5);
+        assertEquals(1, streams.size());
+        assertEquals(source.length(), streams.get(0).count);
+
+        streams.clear();
+        set(mojo, "force", false);
+        write(source, "${name} from ${filter}\n");
+        assertTrue(source.setLastModified(source.lastModified() + 2000));
+        mojo.execute();
+        assertEquals("n3 from f3.properties\n", read(new File(outputDir, "f3.txt")));
+        assertEquals(1, streams.size());
+    }
+
+    public void testChangedFilterIsParsedAgain() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name}\n");
+        File filter = new File(filterDir, "f.properties");
+        write(filter, "name=a\n");
+        File output = new File(outputDir, "f.txt");
+        long lastModified = filter.lastModified();
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        mojo.execute();
+        assertEquals("a\n", read(output));
+
+        write(filter, "name=b\n");
+        assertTrue(filter.setLastModified(lastModified + 2000));
+        mojo.execute();
+        assertEquals("b\n", read(output));
+
+        // a change which keeps modification time and size is only seen after the filter has been invalidated
+        write(filter, "name=c\n");
+        assertTrue(filter.setLastModified(lastModified + 2000));
+        mojo.execute();
+        assertEquals("b\n", read(output));
+        mojo.invalidate(Collections.singleton(filter));
+        mojo.execute();
+        assertEquals("c\n", read(output));
+    }
+
+    public void testCompiledTemplatesAreNotSharedBetweenMojos() throws Exception {
+        File source = new File(baseDir, "template.txt");
+        write(source, "${name}\n");
+        write(new File(filterDir, "f.properties"), "name=a\n");
+        File reportFile = new File(outputDir, "template-report.json");
+
+        TemplateMojo mojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        set(mojo, "report", true);
+        mojo.execute();
+        assertTrue(read(reportFile).contains("\"cacheHit\": false"));
+        mojo.execute();
+        assertTrue(read(reportFile).contains("\"cacheHit\": true"));
+
+        TemplateMojo otherMojo = createMojo(createTemplate(source, "@{filterBaseName}.txt"));
+        set(otherMojo, "report", true);
+        otherMojo.execute();
+        assertTrue(read(reportFile).contains("\"cacheHit\": false"));
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    private void assertOutputs(int filterCount) throws Exception {
+        for (int i = 0; i < filterCount; i++) {
+            assertEquals("n" + i + " of f" + i + ".properties\n", read(new File(outputDir, "f" + i + ".txt")));
+        }
+    }
+
+    private static List<String> getSortedNames(File dir) {
+        List<String> names = new ArrayList<String>(Arrays.asList(dir.list()));
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * @return the output files of the "Created" and "Skipped" debug messages, in logged order
+     */
+    private static List<String> getLoggedOutputs(RecordingLog log) {
+        List<String> outputs = new ArrayList<String>();
+        for (String message : log.getMessages("debug")) {
+            if (message.startsWith("Created ") || message.startsWith("Skipped ")) {
+                outputs.add(message.substring(8).split(" ")[0]);
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Executes the mojo with a new log.
+     *
+     * @return the "Created" or "Skipped" debug message of the given output file
+     */
+    private static String execute(TemplateMojo mojo, File output) throws Exception {
+        RecordingLog log = new RecordingLog();
+        mojo.setLog(log);
+        mojo.execute();
+        for (String message : log.getMessages("debug")) {
+            if (message.startsWith("Created " + output) || message.startsWith("Skipped " + output)) {
+                return message;
+            }
+        }
+        fail("no message logged for " + output + ", messages: " + log.getMessages("debug"));
+        return null;
+    }
+
+    static MojoExecutionException getFailure(TemplateMojo mojo) {
+        try {
+            mojo.execute();
+        } catch (MojoExecutionException e) {
+            return e;
+        }
+        fail("MojoExecutionException expected");
+        return null;
+    }
+
+    /**
+     * Creates a template which is rendered against all property files in the filter directory.
+     */
+    Template createTemplate(File source, String outputFileNamePattern) throws Exception {
+        return createTemplate(source, filterDir, outputFileNamePattern);
+    }
+
+    static Template createTemplate(File source, File filterDir, String outputFileNamePattern) throws Exception {
+        FileSet filterSet = new FileSet();
+        filterSet.setDirectory(filterDir.getPath());
+        filterSet.addInclude("**/*.properties");
+        filterDir.mkdirs();
+        Template template = new Template();
+        set(template, "source", source);
+        set(template, "filterSet", filterSet);
+        set(template, "outputFileNamePattern", outputFileNamePattern);
+        set(template, "lineEnding", "keep");
+        return template;
+    }
+
+    TemplateMojo createMojo(Template... templates) throws Exception {
+        return initMojo(new TemplateMojo(), outputDir, templates);
+    }
+
+    static <T extends TemplateMojo> T initMojo(T mojo, File outputDir, Template... templates) throws Exception {
+        set(mojo, "project", new MavenProject(new Model()));
+        set(mojo, "outputDirectory", outputDir);
+        set(mojo, "templates", templates);
+        set(mojo, "encoding", "UTF-8");
+        set(mojo, "bufferSize", 65536);
+        set(mojo, "decodeThreshold", 4194304L);
+        set(mojo, "streamThreshold", 67108864L);
+        mojo.setLog(new RecordingLog());
+        return mojo;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.Properties;
 import java.util.Map;
 import java.io.StringReader;
 import java.io.IOException;
+import java.nio.CharBuffer;
 
 
 public class TemplateReaderTest extends TestCase {
@@ -138,11 +139,123 @@ public class TemplateReaderTest extends TestCase {
         test(properties, "${nlValue}_more text", "\n_more text");
     }
 
+    public void testCharAfterKeyIsNotScanned() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("a", "A");
+        properties.setProperty("b", "B");
+
+        test(properties, "$a;$b", "A;B");
+        test(properties, "$a$b", "$a$b");
+        test(properties, "${a}$b", "A$b");
+        test(properties, "${a}${b}", "A${b}");
+        test(properties, "${x}$b", "${x}B");
+        test(properties, "$$a", "$$a");
+    }
+
+    public void testKeysAcrossBufferBoundaries() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("bar", "foo");
+
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < 8190; i++) {
+            prefix.append('x');
+        }
+        for (int i = 0; i < 4; i++) {
+            test(properties, prefix + "${bar}, $bar;", prefix + "foo, foo;");
+            prefix.append('x');
+        }
+    }
+
+    public void testUnresolvedKeysAcrossBufferBoundaries() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 8190; i++) {
+            input.append(i % 100 == 99 ? '\n' : 'x');
+        }
+        input.append("${bar}\r\n$baz");
+        String text = input.toString();
+
+        UnresolvedKeyCollector keys = new UnresolvedKeyCollector();
+        TemplateReader templateReader = new TemplateReader(new StringReader(text), new Properties());
+        templateReader.setUnresolvedKeyListener(keys);
+        assertEquals(text, templateReader.readAll());
+        assertEquals("[82:91: bar, 83:1: baz]", keys.getUnresolvedKeys().toString());
+
+        keys = new UnresolvedKeyCollector();
+        templateReader = new TemplateReader(new TrickleReader(text), new Properties());
+        templateReader.setUnresolvedKeyListener(keys);
+        assertEquals(text, templateReader.readAll());
+        assertEquals("[82:91: bar, 83:1: baz]", keys.getUnresolvedKeys().toString());
+    }
+
+    public void testOverlongKeysArePassedThrough() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("a", "A");
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i <= TemplateReader.MAX_KEY_LENGTH; i++) {
+            key.append('k');
+        }
+        properties.setProperty(key.toString(), "K");
+
+        test(properties, "${" + key + "} $a ${a}", "${" + key + "} A A");
+        test(properties, "$" + key + " $a ${a}", "$" + key + " A A");
+        test(properties, "$" + key, "$" + key);
+        assertEquals("${" + key + "} A A", CompiledTemplate.compile("${" + key + "} $a ${a}", '$').render(properties));
+        assertEquals("$" + key + " A A", CompiledTemplate.compile("$" + key + " $a ${a}", '$').render(properties));
+    }
+
     private static void test(Properties properties, String input, String expectedOutput) throws IOException {
         StringReader stringReader = new StringReader(input);
         TemplateReader templateReader = new TemplateReader(stringReader, properties);
         String actualOutput = templateReader.readAll();
         assertEquals(expectedOutput, actualOutput);
+
+        assertEquals(expectedOutput, readCharByChar(new TemplateReader(new StringReader(input), properties)));
+        assertEquals(expectedOutput, new TemplateReader(new TrickleReader(input), properties).readAll());
+
+        TemplateReader.Resolver resolver = new TemplateReader.KeyValueResolver(properties);
+        assertEquals(expectedOutput, TemplateReader.createUnsynchronized(new StringReader(input), resolver).readAll());
+        assertEquals(expectedOutput, readCharBuffer(TemplateReader.createUnsynchronized(new StringReader(input), resolver)));
+
+        char[] chars = ("<<" + input + ">>").toCharArray();
+        CharBuffer text = CharBuffer.wrap(chars, 2, input.length());
+        assertEquals(expectedOutput, new TemplateReader(text, resolver).readAll());
+        assertEquals(expectedOutput, readCharByChar(TemplateReader.createUnsynchronized(text, resolver)));
+        assertEquals(2, text.position());
+        assertEquals(expectedOutput, new TemplateReader(CharBuffer.wrap(input), resolver).readAll());
+    }
+
+    private static String readCharBuffer(TemplateReader templateReader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        CharBuffer charBuffer = CharBuffer.allocate(3);
+        while (templateReader.read(charBuffer) != -1) {
+            charBuffer.flip();
+            sb.append(charBuffer);
+            charBuffer.clear();
+        }
+        return sb.toString();
     }
 
+    private static String readCharByChar(TemplateReader templateReader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = templateReader.read()) != -1) {
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Delivers one character per read, so that every key crosses a fill boundary.
+     */
+    private static class TrickleReader extends StringReader {
+
+        public TrickleReader(String s) {
+            super(s);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
 }
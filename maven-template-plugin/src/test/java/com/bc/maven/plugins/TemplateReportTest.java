@@ -0,0 +1,36 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+
+public class TemplateReportTest extends TestCase {
+
+    public void testWriteJson() throws IOException {
+        TemplateReport report = new TemplateReport();
+        TemplateReport.TemplateEntry template = report.addTemplate(new File("a\"b.xml"));
+        template.setPrepared(false, 100, 2000000);
+        template.addOutput(new File("f1.properties"), new File("f1.xml"), "written", 1500000, 10, 120, 3, 1);
+        template.addOutput(new File("f2.properties"), new File("f2.xml"), "up to date", 500000, 12, 0, 0, 0);
+        report.addTemplate(new File("b.txt")).setPrepared(true, 0, 0);
+        report.finish();
+
+        StringWriter writer = new StringWriter();
+        report.write(writer);
+        String json = writer.toString();
+        assertTrue(json, json.contains("\"outputCount\": 2,"));
+        assertTrue(json, json.contains("\"writtenCount\": 1,"));
+        assertTrue(json, json.contains("\"upToDateCount\": 1,"));
+        assertTrue(json, json.contains("\"cacheHitCount\": 1,"));
+        assertTrue(json, json.contains("\"bytesRead\": 122,"));
+        assertTrue(json, json.contains("\"bytesWritten\": 120,"));
+        assertTrue(json, json.contains("\"lookupCount\": 3,"));
+        assertTrue(json, json.contains("\"unresolvedCount\": 1,"));
+        assertTrue(json, json.contains("\"source\": \"a\\\"b.xml\","));
+        assertTrue(json, json.contains("\"status\": \"written\", \"durationMillis\": 1.500,"));
+        assertTrue(json, json.contains("\"outputs\": []"));
+    }
+}
@@ -0,0 +1,92 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+
+public class TemplateStateTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("template-state", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testUpToDate() throws IOException {
+        File stateFile = new File(dir, "state");
+        File outputFile = new File(dir, "output.txt");
+
+        TemplateState state = TemplateState.load(stateFile);
+        assertFalse(state.isUpToDate(outputFile, "abc"));
+        state.put(outputFile, "abc");
+        state.save();
+
+        state = TemplateState.load(stateFile);
+        assertFalse(state.isUpToDate(outputFile, "abc"));
+
+        write(outputFile, "output");
+        assertTrue(state.isUpToDate(outputFile, "abc"));
+        assertFalse(state.isUpToDate(outputFile, "abd"));
+    }
+
+    public void testSourceRecord() throws IOException {
+        File stateFile = new File(dir, "state");
+        File source = new File(dir, "source.txt");
+
+        TemplateState state = TemplateState.load(stateFile);
+        assertNull(state.getSource(source, "1#2"));
+        // keys may contain any character, also the separators of the record
+        state.putSource(source, "1#2", "abc", new TreeSet<String>(Arrays.asList("a", "b:1", "3:c\n", "")));
+        state.save();
+
+        state = TemplateState.load(stateFile);
+        TemplateState.SourceRecord record = state.getSource(source, "1#2");
+        assertEquals("abc", record.getContentHash());
+        assertEquals("[, 3:c\n, a, b:1]", record.getKeys().toString());
+        assertNull(state.getSource(source, "1#3"));
+    }
+
+    public void testHash() throws IOException {
+        File file = new File(dir, "input.txt");
+        write(file, "a=b");
+
+        assertEquals(TemplateState.hash(file), TemplateState.hash(file));
+        assertEquals(TemplateState.hash(file), TemplateState.hash("a=b".getBytes("US-ASCII")));
+        assertFalse(TemplateState.hash("a", "bc").equals(TemplateState.hash("ab", "c")));
+
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("x", "1");
+        map.put("y", "2");
+        assertEquals(TemplateState.hash(map), TemplateState.hash(new TreeMap<String, String>(map)));
+        map.put("y", "3");
+        assertFalse(TemplateState.hash(map).equals(TemplateState.hash(new HashMap<String, String>())));
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+}
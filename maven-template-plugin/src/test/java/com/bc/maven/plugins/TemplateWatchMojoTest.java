@@ -0,0 +1,137 @@
+package com.bc.maven.plugins;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.bc.maven.plugins.TestUtils.read;
+import static com.bc.maven.plugins.TestUtils.set;
+import static com.bc.maven.plugins.TestUtils.write;
+
+public class TemplateWatchMojoTest extends TestCase {
+
+    private static final long DEBOUNCE = 500;
+    private static final long TIMEOUT = 10000;
+
+    private File baseDir;
+    private File outputDir;
+    private File sourceA;
+    private File sourceB;
+    private File filterDirA;
+    private File filterDirB;
+    private RecordingLog log;
+    private Thread watchThread;
+
+    @Override
+    protected void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("template-watch-test").toFile();
+        outputDir = new File(baseDir, "out");
+        sourceA = new File(baseDir, "src/a.txt");
+        sourceB = new File(baseDir, "src/b.txt");
+        filterDirA = new File(baseDir, "filtersA");
+        filterDirB = new File(baseDir, "filtersB");
+        write(sourceA, "a ${name}\n");
+        write(sourceB, "b ${name}\n");
+        write(new File(filterDirA, "f.properties"), "name=1\n");
+        write(new File(filterDirB, "f.properties"), "name=2\n");
+
+        TemplateWatchMojo mojo = new TemplateWatchMojo();
+        String pattern = "@{sourceBaseName}-@{filterBaseName}.txt";
+        TemplateMojoTest.initMojo(mojo, outputDir, TemplateMojoTest.createTemplate(sourceA, filterDirA, pattern),
+                                  TemplateMojoTest.createTemplate(sourceB, filterDirB, pattern));
+        set(mojo, "debounce", DEBOUNCE);
+        log = new RecordingLog();
+        mojo.setLog(log);
+        watchThread = startWatching(mojo);
+        waitFor("Watching ");
+        assertEquals("a 1\n", read(new File(outputDir, "a-f.txt")));
+        assertEquals("b 2\n", read(new File(outputDir, "b-f.txt")));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        watchThread.interrupt();
+        watchThread.join(TIMEOUT);
+        assertFalse("watch goal did not stop when interrupted", watchThread.isAlive());
+        TestUtils.delete(baseDir);
+    }
+
+    public void testOnlyAffectedTemplatesAreProcessed() throws Exception {
+        File outputB = new File(outputDir, "b-f.txt");
+        assertTrue(outputB.setLastModified(0));
+
+        write(sourceA, "A ${name}\n");
+        waitFor("Processed 1 template(s)");
+        assertEquals("A 1\n", read(new File(outputDir, "a-f.txt")));
+        assertEquals(0, outputB.lastModified());
+        assertEquals("[" + sourceA.getAbsoluteFile().toPath().normalize() + "]", getChangedPaths().get(0));
+    }
+
+    public void testChangesWithinDebounceTimeAreProcessedTogether() throws Exception {
+        write(new File(filterDirB, "f.properties"), "name=3\n");
+        write(new File(filterDirB, "g.properties"), "name=4\n");
+        write(new File(filterDirB, "h.properties"), "name=5\n");
+        waitFor("Processed 1 template(s)");
+        Thread.sleep(2 * DEBOUNCE);
+
+        assertEquals(1, getProcessedMessages().size());
+        String changedPaths = getChangedPaths().get(0);
+        assertTrue(changedPaths, changedPaths.contains("f.properties"));
+        assertTrue(changedPaths, changedPaths.contains("g.properties"));
+        assertTrue(changedPaths, changedPaths.contains("h.properties"));
+        assertEquals("b 3\n", read(new File(outputDir, "b-f.txt")));
+        assertEquals("b 4\n", read(new File(outputDir, "b-g.txt")));
+        assertEquals("b 5\n", read(new File(outputDir, "b-h.txt")));
+        assertFalse(new File(outputDir, "a-g.txt").exists());
+    }
+
+    private static Thread startWatching(final TemplateWatchMojo mojo) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    mojo.execute();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }, "template-watch");
+        thread.start();
+        return thread;
+    }
+
+    private List<String> getChangedPaths() {
+        List<String> changedPaths = new ArrayList<String>();
+        for (String message : log.getMessages("info")) {
+            if (message.startsWith("Changed: ")) {
+                changedPaths.add(message.substring(9));
+            }
+        }
+        return changedPaths;
+    }
+
+    private List<String> getProcessedMessages() {
+        List<String> processed = new ArrayList<String>();
+        for (String message : log.getMessages("info")) {
+            if (message.startsWith("Processed ")) {
+                processed.add(message);
+            }
+        }
+        return processed;
+    }
+
+    private void waitFor(String messagePrefix) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            for (String message : log.getMessages("info")) {
+                if (message.startsWith(messagePrefix)) {
+                    return;
+                }
+            }
+            Thread.sleep(20);
+        }
+        fail("no message '" + messagePrefix + "...' logged, messages: " + log.getMessages("info"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.bc.maven.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+
+/**
+ * Helpers for tests which run mojos on files in a temporary directory.
+ */
+final class TestUtils {
+
+    private TestUtils() {
+    }
+
+    /**
+     * Sets a field of the given object, which may be declared by a superclass, as Maven does for mojo parameters.
+     */
+    static void set(Object object, String name, Object value) throws Exception {
+        for (Class<?> type = object.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(object, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // try the superclass
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    static void write(File file, String text, String encoding) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), encoding);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    static void write(File file, String text) throws IOException {
+        write(file, text, "UTF-8");
+    }
+
+    static String read(File file, String encoding) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), encoding);
+    }
+
+    static String read(File file) throws IOException {
+        return read(file, "UTF-8");
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}